@@ -0,0 +1,47 @@
+package com.exed1ons.bottiktokdownloader.benchmark;
+
+import ch.qos.logback.classic.Level;
+import com.exed1ons.bottiktokdownloader.service.InstagramReelDownloadService;
+import com.exed1ons.bottiktokdownloader.service.SendTikTokService;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id extraction that runs for every TikTok video and Instagram reel link.
+ * Logging of the two services is switched off so the benchmark measures the matching, not the appender.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdExtractionBenchmark {
+
+    private static final String VIDEO_URL = "https://www.tiktok.com/@someone.cool/video/7312345678901234567?is_from_webapp=1&sender_device=pc";
+    private static final String REEL_URL = "https://www.instagram.com/reel/C1aB2cD3eF4/?igsh=MWQ1ZGUxMzBkMA==";
+
+    private SendTikTokService sendTikTokService;
+    private InstagramReelDownloadService instagramReelDownloadService;
+
+    @Setup
+    public void setUp() {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(SendTikTokService.class)).setLevel(Level.OFF);
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(InstagramReelDownloadService.class)).setLevel(Level.OFF);
+
+        sendTikTokService = new SendTikTokService(null, null, null);
+        instagramReelDownloadService = new InstagramReelDownloadService(null, null);
+    }
+
+    @Benchmark
+    public String extractVideoId() {
+        return sendTikTokService.extractVideoId(VIDEO_URL);
+    }
+
+    @Benchmark
+    public String extractShortcode() {
+        return instagramReelDownloadService.extractShortcode(REEL_URL);
+    }
+}
@@ -0,0 +1,105 @@
+package com.exed1ons.bottiktokdownloader.benchmark;
+
+import com.exed1ons.bottiktokdownloader.service.LinkClassifier;
+import com.exed1ons.bottiktokdownloader.service.MediaLink;
+import org.openjdk.jmh.annotations.*;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the single-pass {@link LinkClassifier} with the per-message regex cascade that processMessage used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkExtractionBenchmark {
+
+    private static final Pattern URL_IN_TEXT = Pattern.compile("https?://\\S+");
+
+    @Param({"chatter", "single-link", "link-in-long-text", "several-links"})
+    public String message;
+
+    private final LinkClassifier linkClassifier = new LinkClassifier();
+
+    private String text;
+    private List<MessageEntity> entities;
+
+    @Setup
+    public void setUp() {
+        text = switch (message) {
+            case "chatter" -> "lol did anyone see what happened at the meeting yesterday? i still can't believe it 😂";
+            case "single-link" -> "https://www.tiktok.com/@someone.cool/video/7312345678901234567?is_from_webapp=1&sender_device=pc";
+            case "link-in-long-text" -> "ok so this is the one i was talking about earlier, watch till the end because the ending is "
+                    + "absolutely wild and nobody in the comments noticed it https://vm.tiktok.com/ZMhKq3xYz/ "
+                    + "anyway tell me what you think, and also are we still going out on friday or not?";
+            case "several-links" -> "music for tonight https://open.spotify.com/track/4uLU6hMCjMI75M1A2tKUQC?si=1a2b3c4d "
+                    + "and this reel https://www.instagram.com/reel/C1aB2cD3eF4/?igsh=abc "
+                    + "and the slides https://www.tiktok.com/@travel.pics/photo/7398765432109876543";
+            default -> throw new IllegalArgumentException("Unknown message: " + message);
+        };
+        entities = urlEntities(text);
+    }
+
+    @Benchmark
+    public String legacyRegexCascade() {
+        String link = null;
+
+        Matcher shortUrlMatcher = Pattern.compile("https://v[mt].tiktok.com/[A-Za-z0-9]+").matcher(text);
+        if (shortUrlMatcher.find()) {
+            link = shortUrlMatcher.group();
+        }
+
+        Matcher longUrlMatcher = Pattern.compile("https://www.tiktok.com/@[^/]+/video/[0-9]+").matcher(text);
+        if (longUrlMatcher.find()) {
+            link = longUrlMatcher.group();
+        }
+
+        Matcher tiktokPhotoMatcher = Pattern.compile("https://www.tiktok.com/@[^/]+/photo/[0-9]+").matcher(text);
+        if (tiktokPhotoMatcher.find()) {
+            link = tiktokPhotoMatcher.group();
+        }
+
+        Matcher instagramReelMatcher = Pattern.compile("https://www.instagram.com/reel/[A-Za-z0-9-_]+").matcher(text);
+        if (instagramReelMatcher.find()) {
+            link = instagramReelMatcher.group();
+        }
+
+        Matcher spotifyTrackMatcher = Pattern.compile("https://open.spotify.com/track/[A-Za-z0-9]+(\\?si=[A-Za-z0-9]+)?").matcher(text);
+        if (spotifyTrackMatcher.find()) {
+            link = spotifyTrackMatcher.group();
+        }
+
+        return link;
+    }
+
+    @Benchmark
+    public List<MediaLink> classifierWithEntities() {
+        return linkClassifier.classify(text, entities);
+    }
+
+    @Benchmark
+    public List<MediaLink> classifierTextScan() {
+        return linkClassifier.classify(text, null);
+    }
+
+    private static List<MessageEntity> urlEntities(String text) {
+        List<MessageEntity> entities = new ArrayList<>();
+        Matcher matcher = URL_IN_TEXT.matcher(text);
+        while (matcher.find()) {
+            MessageEntity entity = new MessageEntity();
+            entity.setType("url");
+            entity.setOffset(matcher.start());
+            entity.setLength(matcher.end() - matcher.start());
+            entities.add(entity);
+        }
+        return entities;
+    }
+}
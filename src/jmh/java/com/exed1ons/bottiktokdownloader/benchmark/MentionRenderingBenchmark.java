@@ -0,0 +1,54 @@
+package com.exed1ons.bottiktokdownloader.benchmark;
+
+import com.exed1ons.bottiktokdownloader.bot.MentionBatcher;
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mention messages for /tag in groups from 10 to 10k members, split the way MentionFanout sends them:
+ * at most 4096 characters and 50 mentions per message. Every fourth member has no username
+ * and is rendered as a tg://user link, which is the longer path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MentionRenderingBenchmark {
+
+    private static final int MAX_LENGTH = 4096;
+    private static final int MAX_MENTIONS = 50;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int members;
+
+    private List<GroupMember> groupMembers;
+
+    @Setup
+    public void setUp() {
+        groupMembers = new ArrayList<>(members);
+        for (int i = 0; i < members; i++) {
+            groupMembers.add(GroupMember.builder()
+                    .id(100_000_000L + i)
+                    .userName(i % 4 == 0 ? null : "member_" + i)
+                    .firstName(i % 8 == 0 ? null : "Member " + i)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public int renderMentions(Blackhole blackhole) {
+        MentionBatcher batcher = new MentionBatcher(MAX_LENGTH, MAX_MENTIONS, blackhole::consume);
+        for (GroupMember member : groupMembers) {
+            batcher.add(member);
+        }
+        batcher.flush();
+        return batcher.getMessages();
+    }
+}
@@ -0,0 +1,43 @@
+package com.exed1ons.bottiktokdownloader.benchmark;
+
+import com.exed1ons.bottiktokdownloader.service.SlideshowPage;
+import com.exed1ons.bottiktokdownloader.service.TikTokSlideDownloadService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jsoup parsing of tiktokio slideshow responses, as done once per slideshow link.
+ * The fixtures follow the provider's htmx fragment: one thumbnail and download button per slide plus the MP3 link.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlideshowParsingBenchmark {
+
+    @Param({"tiktokio-slideshow-small.html", "tiktokio-slideshow-large.html"})
+    public String fixture;
+
+    private String html;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream inputStream = SlideshowParsingBenchmark.class.getResourceAsStream("/fixtures/" + fixture)) {
+            if (inputStream == null) {
+                throw new IOException("Fixture not found: " + fixture);
+            }
+            html = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public SlideshowPage parseSlideshowPage() {
+        return TikTokSlideDownloadService.parseSlideshowPage(html);
+    }
+}
@@ -3,10 +3,12 @@ package com.exed1ons.bottiktokdownloader.bot;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 @Getter
@@ -16,13 +18,30 @@ public class BotInitializer {
     private static final Logger logger = LoggerFactory.getLogger(BotInitializer.class);
 
     private final TiktokSenderBot tiktokSenderBot;
+    private final String mode;
+    private final String webhookUrl;
+    private final String webhookSecret;
+    private final int webhookMaxConnections;
 
-    public BotInitializer(TiktokSenderBot tiktokSenderBot) {
+    public BotInitializer(TiktokSenderBot tiktokSenderBot,
+                          @Value("${bot.mode:polling}") String mode,
+                          @Value("${bot.webhook.url:}") String webhookUrl,
+                          @Value("${bot.webhook.secret:}") String webhookSecret,
+                          @Value("${bot.webhook.max-connections:40}") int webhookMaxConnections) {
         this.tiktokSenderBot = tiktokSenderBot;
+        this.mode = mode;
+        this.webhookUrl = webhookUrl;
+        this.webhookSecret = webhookSecret;
+        this.webhookMaxConnections = webhookMaxConnections;
     }
 
     @EventListener({ContextRefreshedEvent.class})
     public void init() {
+        if ("webhook".equalsIgnoreCase(mode)) {
+            registerWebhook();
+            return;
+        }
+
         try {
             TelegramBotsApi telegramBotsApi = new TelegramBotsApi(DefaultBotSession.class);
             telegramBotsApi.registerBot(tiktokSenderBot);
@@ -30,4 +49,23 @@ public class BotInitializer {
             logger.error("Error while initializing bot", e);
         }
     }
+
+    private void registerWebhook() {
+        if (webhookUrl.isBlank() || webhookSecret.isBlank()) {
+            logger.error("bot.mode=webhook needs bot.webhook.url and bot.webhook.secret, the bot will not receive updates");
+            return;
+        }
+
+        try {
+            SetWebhook setWebhook = SetWebhook.builder()
+                    .url(webhookUrl)
+                    .secretToken(webhookSecret)
+                    .maxConnections(webhookMaxConnections)
+                    .build();
+            tiktokSenderBot.execute(setWebhook);
+            logger.info("Webhook registered at " + webhookUrl);
+        } catch (Exception e) {
+            logger.error("Error while registering webhook", e);
+        }
+    }
 }
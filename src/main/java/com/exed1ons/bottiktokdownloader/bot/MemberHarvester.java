@@ -0,0 +1,134 @@
+package com.exed1ons.bottiktokdownloader.bot;
+
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+import com.exed1ons.bottiktokdownloader.service.GroupMemberService;
+import com.exed1ons.bottiktokdownloader.util.LruCache;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Learns group members from the updates the bot already receives: message senders, users joining the chat and users
+ * in text_mention entities. Recording only touches memory; new or renamed members collect in a buffer keyed by chat
+ * and user, and a timer writes each chat's buffer with one batched upsert. Members seen recently with the same
+ * username and first name are skipped, so active chats do not rewrite the same rows on every flush.
+ */
+@Component
+public class MemberHarvester {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemberHarvester.class);
+
+    private final GroupMemberService groupMemberService;
+    private final int maxPending;
+    private final LruCache<String, String> recentlySeen;
+
+    private Map<Long, Map<Long, GroupMember>> pending = new HashMap<>();
+    private int pendingCount;
+
+    public MemberHarvester(GroupMemberService groupMemberService,
+                           @Value("${members.harvest.max-pending:10000}") int maxPending,
+                           @Value("${members.harvest.seen-size:100000}") int seenSize) {
+        this.groupMemberService = groupMemberService;
+        this.maxPending = maxPending;
+        this.recentlySeen = new LruCache<>(seenSize);
+    }
+
+    public void record(Message message) {
+        if (message.getChat() == null || !(message.getChat().isGroupChat() || message.getChat().isSuperGroupChat())) {
+            return;
+        }
+        Long chatId = message.getChatId();
+
+        record(chatId, message.getFrom());
+        if (message.getNewChatMembers() != null) {
+            for (User user : message.getNewChatMembers()) {
+                record(chatId, user);
+            }
+        }
+        recordMentions(chatId, message.getEntities());
+        recordMentions(chatId, message.getCaptionEntities());
+    }
+
+    private void recordMentions(Long chatId, List<MessageEntity> entities) {
+        if (entities == null) {
+            return;
+        }
+        for (MessageEntity entity : entities) {
+            if ("text_mention".equals(entity.getType())) {
+                record(chatId, entity.getUser());
+            }
+        }
+    }
+
+    private void record(Long chatId, User user) {
+        if (user == null || Boolean.TRUE.equals(user.getIsBot())) {
+            return;
+        }
+        String seenKey = chatId + ":" + user.getId();
+        String details = user.getUserName() + "\n" + user.getFirstName();
+        if (details.equals(recentlySeen.get(seenKey))) {
+            return;
+        }
+
+        synchronized (this) {
+            Map<Long, GroupMember> chatMembers = pending.computeIfAbsent(chatId, id -> new HashMap<>());
+            if (!chatMembers.containsKey(user.getId())) {
+                if (pendingCount >= maxPending) {
+                    logger.warn("Member buffer is full, dropping user " + user.getId() + " in chat " + chatId);
+                    return;
+                }
+                pendingCount++;
+            }
+            chatMembers.put(user.getId(), GroupMember.builder()
+                    .chatId(chatId)
+                    .id(user.getId())
+                    .userName(user.getUserName())
+                    .firstName(user.getFirstName())
+                    .build());
+        }
+        recentlySeen.put(seenKey, details);
+    }
+
+    @Scheduled(fixedDelayString = "${members.harvest.flush-interval:10s}")
+    public void flush() {
+        Map<Long, Map<Long, GroupMember>> batch;
+        synchronized (this) {
+            if (pendingCount == 0) {
+                return;
+            }
+            batch = pending;
+            pending = new HashMap<>();
+            pendingCount = 0;
+        }
+
+        int written = 0;
+        for (Map.Entry<Long, Map<Long, GroupMember>> entry : batch.entrySet()) {
+            try {
+                written += groupMemberService.importMembers(entry.getKey(), entry.getValue().values());
+            } catch (RuntimeException e) {
+                logger.error("Failed to save " + entry.getValue().size() + " harvested members of chat " + entry.getKey()
+                        + ": " + e.getMessage());
+                for (GroupMember member : entry.getValue().values()) {
+                    recentlySeen.remove(entry.getKey() + ":" + member.getId());
+                }
+            }
+        }
+        logger.info("Harvested members from " + batch.size() + " chats, " + written + " new or changed");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
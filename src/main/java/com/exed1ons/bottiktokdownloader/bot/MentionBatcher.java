@@ -0,0 +1,52 @@
+package com.exed1ons.bottiktokdownloader.bot;
+
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+
+import java.util.function.Consumer;
+
+/**
+ * Packs mentions into messages as members arrive. A message is handed to the sink once the next mention would push it
+ * past {@code maxLength} characters or {@code maxMentions} mentions, so only one message is held in memory at a time.
+ * The length is counted on the HTML source, which is never shorter than the text Telegram checks against its limit.
+ */
+public final class MentionBatcher {
+
+    private final int maxLength;
+    private final int maxMentions;
+    private final Consumer<String> sink;
+
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder mention = new StringBuilder();
+    private int mentions;
+    private int messages;
+
+    public MentionBatcher(int maxLength, int maxMentions, Consumer<String> sink) {
+        this.maxLength = maxLength;
+        this.maxMentions = Math.max(1, maxMentions);
+        this.sink = sink;
+    }
+
+    public void add(GroupMember member) {
+        mention.setLength(0);
+        MentionRenderer.appendMention(mention, member);
+        if (mentions > 0 && (mentions >= maxMentions || text.length() + mention.length() > maxLength)) {
+            flush();
+        }
+        text.append(mention);
+        mentions++;
+    }
+
+    public void flush() {
+        if (mentions == 0) {
+            return;
+        }
+        sink.accept(text.toString());
+        text.setLength(0);
+        mentions = 0;
+        messages++;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+}
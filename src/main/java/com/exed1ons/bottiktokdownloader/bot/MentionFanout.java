@@ -0,0 +1,98 @@
+package com.exed1ons.bottiktokdownloader.bot;
+
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+import com.exed1ons.bottiktokdownloader.service.GroupMemberService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sends /tag and @role mentions for groups of any size. Members are read one page at a time in user id order,
+ * packed into messages within Telegram's length and mention limits, and handed to the sender as soon as each
+ * message is full. The sender goes through {@link TelegramOutboundScheduler} at bulk priority, so a long fan-out
+ * runs at the chat's rate on its own threads instead of holding a dispatcher worker.
+ */
+@Component
+public class MentionFanout {
+
+    private static final Logger logger = LoggerFactory.getLogger(MentionFanout.class);
+
+    private final GroupMemberService groupMemberService;
+    private final int pageSize;
+    private final int maxLength;
+    private final int maxMentions;
+    private final ExecutorService executor;
+
+    public MentionFanout(GroupMemberService groupMemberService,
+                         @Value("${bot.mentions.page-size:500}") int pageSize,
+                         @Value("${bot.mentions.max-length:4096}") int maxLength,
+                         @Value("${bot.mentions.per-message:50}") int maxMentions,
+                         @Value("${bot.mentions.workers:2}") int workers) {
+        this.groupMemberService = groupMemberService;
+        this.pageSize = pageSize;
+        this.maxLength = maxLength;
+        this.maxMentions = maxMentions;
+        AtomicLong counter = new AtomicLong();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "mention-fanout-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Mentions every member of {@code chatId} with {@code roleName}, or every member of the chat when it is null.
+     * Returns immediately; each packed message is passed to {@code sender} from a fan-out thread.
+     */
+    public void tag(Long chatId, String roleName, Consumer<String> sender) {
+        executor.execute(() -> {
+            try {
+                send(chatId, roleName, sender);
+            } catch (Exception e) {
+                logger.error("Failed to tag " + describe(roleName) + " in chat " + chatId, e);
+            }
+        });
+    }
+
+    private void send(Long chatId, String roleName, Consumer<String> sender) {
+        MentionBatcher batcher = new MentionBatcher(maxLength, maxMentions, sender);
+        Long afterId = null;
+        int members = 0;
+        List<GroupMember> page;
+        do {
+            page = groupMemberService.findMentionPage(chatId, roleName, afterId, pageSize);
+            for (GroupMember member : page) {
+                batcher.add(member);
+            }
+            members += page.size();
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize);
+        batcher.flush();
+
+        if (members == 0) {
+            logger.info("No members to tag for " + describe(roleName) + " in chat " + chatId);
+        } else {
+            logger.info("Tagged " + members + " members of " + describe(roleName) + " in chat " + chatId
+                    + " with " + batcher.getMessages() + " messages");
+        }
+    }
+
+    private static String describe(String roleName) {
+        return roleName != null ? "role " + roleName : "all members";
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,31 @@
+package com.exed1ons.bottiktokdownloader.bot;
+
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+
+import java.util.Optional;
+
+/**
+ * Builds the HTML text that /tag and @role mentions send: an @username for members who have one,
+ * a tg://user link with the first name otherwise.
+ */
+final class MentionRenderer {
+
+    private MentionRenderer() {
+    }
+
+    static void appendMention(StringBuilder mentionText, GroupMember member) {
+        if (member.getUserName() != null) {
+            mentionText.append("@").append(member.getUserName()).append(" ");
+        } else {
+            mentionText.append("<a href=\"tg://user?id=")
+                    .append(member.getId())
+                    .append("\">")
+                    .append(escapeHtml(Optional.ofNullable(member.getFirstName()).orElse("incognito")))
+                    .append("</a> ");
+        }
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
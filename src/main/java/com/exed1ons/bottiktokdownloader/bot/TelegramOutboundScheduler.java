@@ -0,0 +1,262 @@
+package com.exed1ons.bottiktokdownloader.bot;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paces every call the bot makes to the Bot API. A call waits for a token from the global bucket and from
+ * the bucket of its chat; waiting calls are served in priority order, so replies go out before bulk
+ * mentions. A 429 puts the call back in the queue after {@code retry_after} seconds and
+ * holds the chat until then.
+ */
+@Component
+public class TelegramOutboundScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TelegramOutboundScheduler.class);
+
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long BUCKET_IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    public enum Priority {
+        REPLY,
+        BULK
+    }
+
+    @FunctionalInterface
+    public interface TelegramCall<T> {
+        T call() throws TelegramApiException;
+    }
+
+    private final double chatRate;
+    private final double chatBurst;
+    private final int maxRetries;
+    private final TokenBucket globalBucket;
+    private final Map<String, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final TreeSet<Ticket> waiting = new TreeSet<>(Comparator
+            .comparing((Ticket ticket) -> ticket.priority)
+            .thenComparingLong(ticket -> ticket.sequence));
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    public TelegramOutboundScheduler(@Value("${telegram.rate.global-per-second:30}") double globalRate,
+                                     @Value("${telegram.rate.chat-per-second:0.33}") double chatRate,
+                                     @Value("${telegram.rate.chat-burst:3}") double chatBurst,
+                                     @Value("${telegram.rate.max-retries:3}") int maxRetries,
+                                     MeterRegistry meterRegistry) {
+        this.chatRate = chatRate;
+        this.chatBurst = chatBurst;
+        this.maxRetries = maxRetries;
+        this.globalBucket = new TokenBucket(globalRate, globalRate);
+        this.dispatcher = new Thread(this::dispatchLoop, "telegram-outbound");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+
+        Gauge.builder("bot.telegram.waiting", this, TelegramOutboundScheduler::getWaitingCalls)
+                .description("Bot API calls waiting for a rate limit token")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code call} once the rate limits allow it and returns its result. Calls rejected with 429 are
+     * retried up to {@code telegram.rate.max-retries} times; any other failure is thrown to the caller.
+     */
+    public <T> T execute(String chatId, Priority priority, TelegramCall<T> call) throws TelegramApiException {
+        long notBefore = 0;
+        for (int attempt = 0; ; attempt++) {
+            awaitTurn(chatId, priority, notBefore);
+            try {
+                return call.call();
+            } catch (TelegramApiRequestException e) {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                if (retryAfter == null || attempt >= maxRetries) {
+                    throw e;
+                }
+                logger.warn("Telegram asked to retry after " + retryAfter + " s for chat " + chatId
+                        + " (attempt " + (attempt + 1) + " of " + maxRetries + ")");
+                notBefore = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter);
+                if (chatId != null) {
+                    bucketFor(chatId).blockUntil(notBefore);
+                } else {
+                    globalBucket.blockUntil(notBefore);
+                }
+            }
+        }
+    }
+
+    public int getWaitingCalls() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitTurn(String chatId, Priority priority, long notBefore) throws TelegramApiException {
+        Ticket ticket = new Ticket(chatId, priority, notBefore, sequence.incrementAndGet());
+        lock.lock();
+        try {
+            waiting.add(ticket);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            ticket.permit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(ticket);
+            throw new TelegramApiException("Interrupted while waiting to call Telegram", e);
+        } catch (ExecutionException e) {
+            throw new TelegramApiException("Outbound scheduler stopped", e.getCause());
+        }
+    }
+
+    private void cancel(Ticket ticket) {
+        lock.lock();
+        try {
+            waiting.remove(ticket);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatchLoop() {
+        long lastPrune = System.nanoTime();
+        while (running) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                Iterator<Ticket> iterator = waiting.iterator();
+                while (iterator.hasNext()) {
+                    Ticket ticket = iterator.next();
+                    if (ticket.notBefore > now) {
+                        continue;
+                    }
+                    TokenBucket chatBucket = ticket.chatId != null ? bucketFor(ticket.chatId) : null;
+                    if (chatBucket != null && !chatBucket.tryTake(now)) {
+                        continue;
+                    }
+                    if (!globalBucket.tryTake(now)) {
+                        if (chatBucket != null) {
+                            chatBucket.refund();
+                        }
+                        break;
+                    }
+                    iterator.remove();
+                    ticket.permit.complete(null);
+                }
+
+                if (now - lastPrune > BUCKET_IDLE_NANOS) {
+                    chatBuckets.values().removeIf(bucket -> bucket.isIdle(now, BUCKET_IDLE_NANOS));
+                    lastPrune = now;
+                }
+
+                changed.awaitNanos(IDLE_WAIT_NANOS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private TokenBucket bucketFor(String chatId) {
+        return chatBuckets.computeIfAbsent(chatId, id -> new TokenBucket(chatRate, chatBurst));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        lock.lock();
+        try {
+            for (Ticket ticket : waiting) {
+                ticket.permit.completeExceptionally(new IllegalStateException("Shutting down"));
+            }
+            waiting.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Ticket {
+        private final String chatId;
+        private final Priority priority;
+        private final long notBefore;
+        private final long sequence;
+        private final CompletableFuture<Void> permit = new CompletableFuture<>();
+
+        private Ticket(String chatId, Priority priority, long notBefore, long sequence) {
+            this.chatId = chatId;
+            this.priority = priority;
+            this.notBefore = notBefore;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private long blockedUntil;
+
+        private TokenBucket(double ratePerSecond, double capacity) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, capacity);
+            this.tokens = this.capacity;
+        }
+
+        synchronized boolean tryTake(long now) {
+            if (now < blockedUntil) {
+                return false;
+            }
+            tokens = Math.min(capacity, tokens + (now - Math.max(lastRefill, blockedUntil)) * ratePerNano);
+            lastRefill = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized void blockUntil(long until) {
+            blockedUntil = Math.max(blockedUntil, until);
+            tokens = 0;
+        }
+
+        synchronized boolean isIdle(long now, long idleNanos) {
+            return now - lastRefill > idleNanos && now >= blockedUntil;
+        }
+    }
+}
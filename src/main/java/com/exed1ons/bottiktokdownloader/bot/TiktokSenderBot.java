@@ -1,7 +1,9 @@
 package com.exed1ons.bottiktokdownloader.bot;
 
+import com.exed1ons.bottiktokdownloader.bot.TelegramOutboundScheduler.Priority;
 import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
 import com.exed1ons.bottiktokdownloader.service.*;
+import io.micrometer.core.instrument.Timer;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.Getter;
 import lombok.Setter;
@@ -13,24 +15,21 @@ import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.GetFile;
 import org.telegram.telegrambots.meta.api.methods.groupadministration.GetChatAdministrators;
 import org.telegram.telegrambots.meta.api.methods.send.*;
-import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.objects.*;
 import org.telegram.telegrambots.meta.api.objects.chatmember.ChatMember;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
 import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
 
 
 @Setter
@@ -50,15 +49,30 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
     private final Mp4ToGifConverter mp4ToGifConverter;
     private final GroupMemberService groupMemberService;
     private final RoleNameService roleNameService;
+    private final UpdateDispatcher updateDispatcher;
+    private final FileIdCacheService fileIdCacheService;
+    private final OutboundHttpClient outboundHttpClient;
+    private final LinkClassifier linkClassifier;
+    private final ConversionCacheService conversionCacheService;
+    private final TelegramOutboundScheduler outboundScheduler;
+    private final PipelineMetrics pipelineMetrics;
+    private final MentionFanout mentionFanout;
+    private final MemberHarvester memberHarvester;
 
     private static final Logger logger = LoggerFactory.getLogger(TiktokSenderBot.class);
 
+    private static final int MEDIA_GROUP_CAPACITY = 10;
+
     public TiktokSenderBot(@Value("${bot.username}") String botName, @Value("${bot.token}") String botToken,
                            SendTikTokService sendTikTokService, TikTokLinkConverter tikTokLinkConverter,
                            SendReelService sendReelService, ImageToMp4Converter imageToMp4Converter,
                            SendSongService sendSongService, TikTokSlideDownloadService tikTokSlideDownloadService,
                            Mp4ToGifConverter mp4ToGifConverter, GroupMemberService groupMemberService,
-                           RoleNameService roleNameService) {
+                           RoleNameService roleNameService, UpdateDispatcher updateDispatcher,
+                           FileIdCacheService fileIdCacheService, OutboundHttpClient outboundHttpClient,
+                           LinkClassifier linkClassifier, ConversionCacheService conversionCacheService,
+                           TelegramOutboundScheduler outboundScheduler, PipelineMetrics pipelineMetrics,
+                           MentionFanout mentionFanout, MemberHarvester memberHarvester) {
 
         super(botToken);
         this.botName = botName;
@@ -72,6 +86,15 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
         this.mp4ToGifConverter = mp4ToGifConverter;
         this.groupMemberService = groupMemberService;
         this.roleNameService = roleNameService;
+        this.updateDispatcher = updateDispatcher;
+        this.fileIdCacheService = fileIdCacheService;
+        this.outboundHttpClient = outboundHttpClient;
+        this.linkClassifier = linkClassifier;
+        this.conversionCacheService = conversionCacheService;
+        this.outboundScheduler = outboundScheduler;
+        this.pipelineMetrics = pipelineMetrics;
+        this.mentionFanout = mentionFanout;
+        this.memberHarvester = memberHarvester;
     }
 
     @Override
@@ -79,10 +102,20 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
         return botName;
     }
 
+    @Override
+    public void onUpdatesReceived(List<Update> updates) {
+        updateDispatcher.dispatchAll(updates, this::handleUpdate);
+    }
+
     @Override
     public void onUpdateReceived(Update update) {
+        updateDispatcher.dispatch(update, this::handleUpdate);
+    }
+
+    private void handleUpdate(Update update) {
         if (update.hasMessage()) {
             Message message = update.getMessage();
+            memberHarvester.record(message);
             if (message.hasText()) {
                 String messageText = message.getText();
                 logger.info("Received message: " + messageText);
@@ -97,13 +130,17 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
                 } else {
                     processMessage(message);
                 }
+            } else if (message.getCaption() != null) {
+                processMessage(message);
             }
         }
     }
 
     private void handleCommands(Message message, String messageText, String chatId) {
         if (messageText.equals("/gif") && message.isReply()) {
-            handleGifCommand(message);
+            handleGifCommand(message, Mp4ToGifConverter.AnimationFormat.MP4);
+        } else if (messageText.equals("/gif gif") && message.isReply()) {
+            handleGifCommand(message, Mp4ToGifConverter.AnimationFormat.GIF);
         } else if (messageText.equals("/init")) {
             initializeGroupMembers(chatId);
             sendMessage(chatId, "Group members initialized.");
@@ -130,7 +167,9 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
     private void handleMentions(String messageText, String chatId) {
         if (messageText.startsWith("@")) {
             String roleName = messageText.substring(1).split("\\s+")[0];
-            tagMembersByRole(chatId, roleName);
+            if (isEveryone(roleName) || groupMemberService.isKnownRole(Long.valueOf(chatId), roleName)) {
+                tagMembersByRole(chatId, roleName);
+            }
         }
     }
 
@@ -138,7 +177,7 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
         String[] parts = messageText.split(" ", 2);
         if (parts.length > 1) {
             String roleName = parts[1].trim();
-            roleNameService.addRole(roleName);
+            roleNameService.addRole(Long.valueOf(chatId), roleName);
             sendMessage(chatId, "Role '" + roleName + "' has been added.");
         } else {
             sendMessage(chatId, "Usage: /addrole <role>");
@@ -156,7 +195,7 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
             if (userIdOpt.isPresent()) {
                 Long userId = userIdOpt.get();
                 try {
-                    groupMemberService.assignRoleToMember(userId, roleName);
+                    groupMemberService.assignRoleToMember(message.getChatId(), userId, roleName);
                     sendMessage(chatId, "Role '" + roleName + "' has been assigned to the mentioned user.");
                 } catch (EntityNotFoundException e) {
                     sendMessage(chatId, e.getMessage());
@@ -173,7 +212,7 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
         String[] parts = messageText.split(" ", 2);
         if (parts.length > 1) {
             String roleName = parts[1].trim();
-            if (roleNameService.removeRoleByName(roleName).isPresent()) {
+            if (roleNameService.removeRoleByName(Long.valueOf(chatId), roleName).isPresent()) {
                 sendMessage(chatId, "Role '" + roleName + "' has been removed.");
             } else {
                 sendMessage(chatId, "Role '" + roleName + "' not found.");
@@ -194,7 +233,7 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
             if (userIdOpt.isPresent()) {
                 Long userId = userIdOpt.get();
                 try {
-                    groupMemberService.removeRoleFromMember(userId, roleName);
+                    groupMemberService.removeRoleFromMember(message.getChatId(), userId, roleName);
                     sendMessage(chatId, "Role '" + roleName + "' has been removed from the mentioned user.");
                 } catch (EntityNotFoundException e) {
                     sendMessage(chatId, e.getMessage());
@@ -213,7 +252,7 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
                 return Optional.of(entity.getUser().getId());
             } else if (entity.getType().equals("mention")) {
                 String username = message.getText().substring(entity.getOffset(), entity.getOffset() + entity.getLength()).substring(1);
-                return groupMemberService.findByUserName(username).map(GroupMember::getId);
+                return groupMemberService.findByUserName(message.getChatId(), username).map(GroupMember::getId);
             }
         }
         return Optional.empty();
@@ -221,32 +260,57 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
 
     public void initializeGroupMembers(String chatId) {
         try {
-            List<ChatMember> members = execute(new GetChatAdministrators(chatId));
-            int addedCount = 0;
+            List<ChatMember> members = outboundScheduler.execute(chatId, Priority.REPLY, () -> execute(new GetChatAdministrators(chatId)));
+            List<GroupMember> groupMembers = new ArrayList<>(members.size());
             for (ChatMember member : members) {
                 User user = member.getUser();
-                if (groupMemberService.findById(user.getId()).isEmpty()) {
-                    groupMemberService.addMember(user.getId(), user.getUserName(), user.getFirstName());
-                    addedCount++;
-                }
+                groupMembers.add(GroupMember.builder()
+                        .id(user.getId())
+                        .userName(user.getUserName())
+                        .firstName(user.getFirstName())
+                        .build());
+            }
+            int claimedCount = groupMemberService.claimLegacyMembers(Long.valueOf(chatId),
+                    groupMembers.stream().map(GroupMember::getId).toList());
+            if (claimedCount > 0) {
+                logger.info("Chat " + chatId + " claimed " + claimedCount + " members imported from the legacy tables.");
             }
-            logger.info("Group members initialized. Added " + addedCount + " new members to the database.");
+            int importedCount = groupMemberService.importMembers(Long.valueOf(chatId), groupMembers);
+            logger.info("Group members initialized. Added or updated " + importedCount + " members in the database.");
         } catch (TelegramApiException e) {
             logger.error("Failed to initialize group members", e);
         }
     }
 
-    private void handleGifCommand(Message message) {
+    private void handleGifCommand(Message message, Mp4ToGifConverter.AnimationFormat format) {
         Message repliedMessage = message.getReplyToMessage();
+        String chatId = message.getChatId().toString();
         if (repliedMessage.hasPhoto()) {
             PhotoSize photo = repliedMessage.getPhoto().get(repliedMessage.getPhoto().size() - 1);
-            sendGif(message.getChatId().toString(),
-                    imageToMp4Converter.createMp4FromImage(
-                            downloadImage(photo.getFileId())));
+            String cacheKey = ConversionCacheService.key(photo.getFileUniqueId(), ImageToMp4Converter.CONVERSION_PARAMETERS);
+            if (sendCachedAnimation(chatId, cacheKey)) {
+                return;
+            }
+            InputFile animation = createMp4FromPhoto(photo.getFileId());
+            if (animation != null) {
+                conversionCacheService.put(cacheKey, sendGif(chatId, animation));
+                imageToMp4Converter.deleteOutputFile(animation.getNewMediaFile());
+            }
         } else if (repliedMessage.hasVideo()) {
             Video video = repliedMessage.getVideo();
-            sendGif(message.getChatId().toString(),
-                    mp4ToGifConverter.convertMp4ToGif(downloadVideo(video.getFileId())));
+            String cacheKey = ConversionCacheService.key(video.getFileUniqueId(), mp4ToGifConverter.describeParameters(format));
+            if (sendCachedAnimation(chatId, cacheKey)) {
+                return;
+            }
+            InputFile sourceVideo = downloadVideo(video.getFileId());
+            InputFile animation = mp4ToGifConverter.convertToAnimation(sourceVideo, format);
+            if (animation != null) {
+                conversionCacheService.put(cacheKey, sendGif(chatId, animation));
+                mp4ToGifConverter.deleteFile(animation.getNewMediaFile());
+            }
+            if (sourceVideo != null) {
+                mp4ToGifConverter.deleteFile(sourceVideo.getNewMediaFile());
+            }
         } else {
             sendMessage(message.getChatId().toString(),
                     "/gif command should be used with a photo reply only");
@@ -254,104 +318,91 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
     }
 
     private void tagMembersByRole(String chatId, String roleName) {
-        List<GroupMember> membersWithRole;
-        if (roleName.equals("all") || roleName.equals("everyone")) {
-            membersWithRole = groupMemberService.findAll();
+        Long groupId = Long.valueOf(chatId);
+        if (isEveryone(roleName)) {
+            mentionFanout.tag(groupId, null, text -> sendHtmlMessage(chatId, text));
+        } else if (groupMemberService.isKnownRole(groupId, roleName)) {
+            mentionFanout.tag(groupId, roleName, text -> sendHtmlMessage(chatId, text));
         } else {
-            membersWithRole = groupMemberService.findByRoleName(roleName);
+            sendMessage(chatId, "Role '" + roleName + "' not found.");
         }
+    }
 
-        StringBuilder mentionText = new StringBuilder();
-        for (GroupMember member : membersWithRole) {
-            if (member.getUserName() != null) {
-                mentionText.append("@").append(member.getUserName()).append(" ");
-            } else {
-                mentionText.append("<a href=\"tg://user?id=")
-                        .append(member.getId())
-                        .append("\">")
-                        .append(Optional.ofNullable(member.getFirstName()).orElse("incognito"))
-                        .append("</a> ");
-            }
-        }
-        sendHtmlMessage(chatId, mentionText.toString());
+    private static boolean isEveryone(String roleName) {
+        return roleName.equals("all") || roleName.equals("everyone");
     }
 
     private void processMessage(Message message) {
-        if (message.hasText()) {
-            String text = message.getText();
-            String link = null;
+        String text = message.hasText() ? message.getText() : message.getCaption();
+        List<MessageEntity> entities = message.hasText() ? message.getEntities() : message.getCaptionEntities();
 
-            Pattern shortUrlPattern = Pattern.compile("https://v[mt].tiktok.com/[A-Za-z0-9]+");
-            Matcher shortUrlMatcher = shortUrlPattern.matcher(text);
-            if (shortUrlMatcher.find()) {
-                link = shortUrlMatcher.group();
+        List<MediaLink> links = linkClassifier.classify(text, entities);
+        if (links.isEmpty()) {
+            logger.warn("No valid URL found in message: " + text);
+            return;
+        }
 
+        String chatId = message.getChatId().toString();
+        for (MediaLink link : links) {
+            handleMediaLink(link, chatId);
+        }
+    }
+
+    private void handleMediaLink(MediaLink link, String chatId) {
+        switch (link.type()) {
+            case TIKTOK_SHORT -> {
                 try {
-                    link = tikTokLinkConverter.expandUrlUsingApi(link);
+                    String expandedUrl = tikTokLinkConverter.expandUrlUsingApi(link.url());
+                    Optional<MediaLink> resolved = linkClassifier.classifyUrl(expandedUrl);
+                    if (resolved.isPresent() && resolved.get().type() != MediaLink.Type.TIKTOK_SHORT) {
+                        handleTikTokLink(resolved.get().url(), chatId);
+                    } else {
+                        logger.warn("Short URL did not resolve to a TikTok video or photo: " + expandedUrl);
+                    }
                 } catch (IOException e) {
-                    logger.error("Failed to resolve short URL: " + link);
+                    logger.error("Failed to resolve short URL: " + link.url());
                 }
             }
-
-            Pattern longUrlPattern = Pattern.compile("https://www.tiktok.com/@[^/]+/video/[0-9]+");
-            Matcher longUrlMatcher = longUrlPattern.matcher(text);
-            if (longUrlMatcher.find()) {
-                link = longUrlMatcher.group();
-            }
-
-            Pattern tiktokPhotoPattern = Pattern.compile("https://www.tiktok.com/@[^/]+/photo/[0-9]+");
-            Matcher tiktokPhotoMatcher = tiktokPhotoPattern.matcher(text);
-            if (tiktokPhotoMatcher.find()) {
-                link = tiktokPhotoMatcher.group();
-            }
-
-            Pattern instagramReelPattern = Pattern.compile("https://www.instagram.com/reel/[A-Za-z0-9-_]+");
-            Matcher instagramReelMatcher = instagramReelPattern.matcher(text);
-            if (instagramReelMatcher.find()) {
-                link = instagramReelMatcher.group();
-            }
-
-            Pattern spotifyTrackPattern = Pattern.compile("https://open.spotify.com/track/[A-Za-z0-9]+(\\?si=[A-Za-z0-9]+)?");
-            Matcher spotifyTrackMatcher = spotifyTrackPattern.matcher(text);
-            if (spotifyTrackMatcher.find()) {
-                link = spotifyTrackMatcher.group();
-            }
-
-            if (link == null) {
-                logger.warn("Link is null in message: " + text);
-                return;
-            }
-
-            String chatId = message.getChatId().toString();
-
-            if (link.contains("tiktok.com/@")) {
-                handleTikTokLink(link, chatId);
-            } else if (link.contains("instagram.com/reel")) {
-                handleInstagramReel(link, chatId);
-            } else if (link.contains("open.spotify.com/track")) {
-                handleSpotifyTrack(link, chatId);
-            } else {
-                logger.warn("No valid URL found in message: " + text);
-            }
+            case TIKTOK_VIDEO, TIKTOK_PHOTO -> handleTikTokLink(link.url(), chatId);
+            case INSTAGRAM_REEL -> handleInstagramReel(link.url(), chatId);
+            case SPOTIFY_TRACK -> handleSpotifyTrack(link.url(), chatId);
         }
     }
 
     private void handleTikTokLink(String link, String chatId) {
         if (link.contains("/photo/")) {
             logger.info("Processing TikTok photo link: " + link);
-            List<String> downloadedPhotos = tikTokSlideDownloadService.downloadSlides(link);
-            String downloadedAudio = tikTokSlideDownloadService.downloadAudio(link);
+            String postId = tikTokSlideDownloadService.extractPostId(link);
+            String slidesKey = postId != null ? FileIdCacheService.tikTokSlidesKey(postId) : null;
+            String audioKey = postId != null ? FileIdCacheService.tikTokSlidesAudioKey(postId) : null;
 
-            if (downloadedPhotos != null && !downloadedPhotos.isEmpty()) {
-                processTikTokPhotos(chatId, downloadedPhotos);
-            } else {
-                logger.warn("No photos were downloaded from the TikTok photo link: " + link);
+            CachedAlbum cachedAlbum = sendCachedAlbum(chatId, slidesKey);
+            boolean slidesSent = cachedAlbum.complete();
+            if (slidesSent && sendCachedAudio(chatId, audioKey)) {
+                return;
             }
 
+            List<String> deliveredSlides = cachedAlbum.delivered();
+            SlideshowDownload slideshow = tikTokSlideDownloadService.startSlideshowDownload(link,
+                    slidesSent ? Integer.MAX_VALUE : deliveredSlides.size());
+            if (slideshow == null) {
+                logger.warn("Failed to fetch the TikTok photo page: " + link);
+                return;
+            }
+
+            if (!slidesSent) {
+                if (!slideshow.images().isEmpty()) {
+                    processTikTokPhotos(chatId, slideshow.images(), deliveredSlides, slidesKey);
+                } else if (deliveredSlides.isEmpty()) {
+                    logger.warn("No photos were found for the TikTok photo link: " + link);
+                }
+            }
+
+            String downloadedAudio = slideshow.audio().join();
             if (downloadedAudio != null && !downloadedAudio.isEmpty()) {
                 java.io.File file = new java.io.File(downloadedAudio);
                 InputFile audioFile = new InputFile(file);
-                sendTikTokPhotoAudio(chatId, audioFile);
+                sendTikTokPhotoAudio(chatId, audioFile, audioKey);
             } else {
                 logger.warn("No audio was downloaded from the TikTok photo link: " + link);
             }
@@ -361,9 +412,14 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
 
             if (videoId != null) {
                 logger.info("Extracted video ID: " + videoId + " from link: " + link);
-                InputFile videoFile = sendTikTokService.getVideo(link);
-                if (videoFile != null) {
-                    sendTikTokVideo(chatId, videoFile);
+                String cacheKey = FileIdCacheService.tikTokVideoKey(videoId);
+                if (sendCachedVideo(chatId, cacheKey)) {
+                    return;
+                }
+
+                MediaLease videoLease = sendTikTokService.getVideo(link);
+                if (videoLease != null) {
+                    sendLeasedVideo(chatId, videoLease, cacheKey);
                 } else {
                     logger.error("Failed to get video file from link: " + link);
                 }
@@ -377,9 +433,15 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
 
     private void handleInstagramReel(String link, String chatId) {
         logger.info("Processing Instagram Reel link: " + link);
-        InputFile reelVideo = sendReelService.getVideo(link);
-        if (reelVideo != null) {
-            sendReelVideo(chatId, reelVideo);
+        String shortcode = sendReelService.extractShortcode(link);
+        String cacheKey = shortcode != null ? FileIdCacheService.instagramReelKey(shortcode) : null;
+        if (sendCachedVideo(chatId, cacheKey)) {
+            return;
+        }
+
+        MediaLease reelLease = sendReelService.getVideo(link);
+        if (reelLease != null) {
+            sendLeasedVideo(chatId, reelLease, cacheKey);
         } else {
             logger.error("Failed to download Instagram Reel from link: " + link);
         }
@@ -387,72 +449,146 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
 
     private void handleSpotifyTrack(String link, String chatId) {
         logger.info("Processing Spotify track link: " + link);
-        InputFile trackAudio = sendSongService.getSong(link);
-        if (trackAudio != null) {
-            sendAudio(chatId, trackAudio);
+        String trackId = sendSongService.extractTrackId(link);
+        String cacheKey = trackId != null ? FileIdCacheService.spotifyTrackKey(trackId) : null;
+        if (sendCachedAudio(chatId, cacheKey)) {
+            return;
+        }
+
+        MediaLease trackLease = sendSongService.getSong(link);
+        if (trackLease != null) {
+            try (trackLease) {
+                sendAudio(chatId, new InputFile(trackLease.getFile(), trackLease.getUploadName()), cacheKey);
+            }
         } else {
             logger.error("Failed to get audio file from Spotify link: " + link);
         }
     }
 
-    private void processTikTokPhotos(String chatId, List<String> imagePaths) {
-        if (imagePaths == null || imagePaths.isEmpty()) {
-            sendMessage(chatId, "No photos were found or downloaded.");
-            return;
-        }
-
-        List<InputMediaPhoto> mediaGroup = new ArrayList<>();
-        List<String> messageIds = new ArrayList<>();
-        int mediaGroupCapacity = 10;
-
-        for (String imagePath : imagePaths) {
-            java.io.File photoFile = new java.io.File(imagePath);
+    /**
+     * Uploads the downloaded slides that follow the {@code alreadySent} ones and, when every slide made it,
+     * caches the file ids of the whole slideshow under {@code cacheKey}.
+     */
+    private void processTikTokPhotos(String chatId, List<CompletableFuture<String>> images, List<String> alreadySent,
+                                     String cacheKey) {
+        List<String> imagePaths = new ArrayList<>();
+        List<String> sentFileIds = new ArrayList<>(alreadySent);
+        boolean allSent = true;
+        int nextImage = 0;
+
+        for (int albumSize : planAlbumSizes(images.size())) {
+            List<java.io.File> album = new ArrayList<>();
+            for (int i = 0; i < albumSize; i++) {
+                String imagePath = images.get(nextImage++).join();
+                if (imagePath == null) {
+                    logger.warn("Skipping a slide that failed to download");
+                    allSent = false;
+                    continue;
+                }
+                imagePaths.add(imagePath);
 
-            if (photoFile.exists() && photoFile.isFile()) {
-                try {
-                    assignImageToMediaAlbum(chatId, photoFile, mediaGroup, messageIds);
-                    if (mediaGroup.size() == mediaGroupCapacity) {
-                        sendMediaGroup(chatId, mediaGroup);
-                        deleteMessages(chatId, messageIds);
-                        mediaGroup.clear();
-                        messageIds.clear();
-                    }
-                } catch (Exception e) {
-                    logger.error("Failed to upload photo: " + imagePath, e);
-                    sendMessage(chatId, "Failed to upload photo: " + photoFile.getName());
+                java.io.File photoFile = new java.io.File(imagePath);
+                if (photoFile.exists() && photoFile.isFile()) {
+                    album.add(photoFile);
+                } else {
+                    logger.error("File does not exist or is not a valid file: " + imagePath);
+                    allSent = false;
+                    sendMessage(chatId, "File does not exist or is not valid: " + photoFile.getName());
                 }
+            }
+
+            List<String> fileIds = sendPhotoAlbum(chatId, album);
+            if (fileIds != null) {
+                sentFileIds.addAll(fileIds);
             } else {
-                logger.error("File does not exist or is not a valid file: " + imagePath);
-                sendMessage(chatId, "File does not exist or is not valid: " + photoFile.getName());
+                allSent = false;
             }
         }
 
-        if (mediaGroup.size() > 1) {
-            sendMediaGroup(chatId, mediaGroup);
-
-            deleteMessages(chatId, messageIds);
-        } else {
-            logger.warn("Only one photo was found. Sending as a single photo.");
+        if (allSent && cacheKey != null) {
+            fileIdCacheService.put(cacheKey, sentFileIds);
         }
 
         deleteMediaAlbum(imagePaths);
     }
 
-    private void assignImageToMediaAlbum(String chatId, java.io.File
-            photoFile, List<InputMediaPhoto> mediaGroup, List<String> messageIds) throws TelegramApiException {
-        InputFile inputFile = new InputFile(photoFile);
-        SendPhoto sendPhoto = new SendPhoto();
-        sendPhoto.setChatId(chatId);
-        sendPhoto.setPhoto(inputFile);
+    /**
+     * Splits {@code photoCount} photos into as few albums as possible with sizes that differ by at most one,
+     * so a slideshow of 11 photos is sent as 6 + 5 instead of 10 + 1.
+     */
+    static List<Integer> planAlbumSizes(int photoCount) {
+        List<Integer> sizes = new ArrayList<>();
+        if (photoCount <= 0) {
+            return sizes;
+        }
+        int albums = (photoCount + MEDIA_GROUP_CAPACITY - 1) / MEDIA_GROUP_CAPACITY;
+        int baseSize = photoCount / albums;
+        int remainder = photoCount % albums;
+        for (int i = 0; i < albums; i++) {
+            sizes.add(i < remainder ? baseSize + 1 : baseSize);
+        }
+        return sizes;
+    }
+
+    private List<String> sendPhotoAlbum(String chatId, List<java.io.File> photos) {
+        if (photos.isEmpty()) {
+            return List.of();
+        }
 
-        Message sentMessage = execute(sendPhoto);
-        String fileId = sentMessage.getPhoto().get(sentMessage.getPhoto().size() - 1).getFileId();
-        String messageId = sentMessage.getMessageId().toString();
+        try {
+            if (photos.size() == 1) {
+                SendPhoto sendPhoto = new SendPhoto();
+                sendPhoto.setChatId(chatId);
+                sendPhoto.setPhoto(new InputFile(photos.get(0)));
+
+                Message sentMessage = upload(chatId, "photo", () -> execute(sendPhoto));
+                logger.info("Photo sent to " + chatId);
+                return List.of(largestPhotoFileId(sentMessage));
+            }
+
+            List<InputMedia> medias = new ArrayList<>();
+            for (int i = 0; i < photos.size(); i++) {
+                InputMediaPhoto media = new InputMediaPhoto();
+                media.setMedia(photos.get(i), "slide" + i + "_" + photos.get(i).getName());
+                medias.add(media);
+            }
+
+            SendMediaGroup sendMediaGroup = new SendMediaGroup();
+            sendMediaGroup.setChatId(chatId);
+            sendMediaGroup.setMedias(medias);
+
+            List<String> fileIds = new ArrayList<>();
+            for (Message sentMessage : upload(chatId, "photo", () -> execute(sendMediaGroup))) {
+                fileIds.add(largestPhotoFileId(sentMessage));
+            }
+            logger.info("Media group of " + photos.size() + " photos sent to " + chatId);
+            return fileIds;
+        } catch (TelegramApiException e) {
+            logger.error("Failed to send media group to " + chatId, e);
+            for (java.io.File photo : photos) {
+                logger.error("Media file details: " + photo.getAbsolutePath());
+            }
+            return null;
+        }
+    }
 
-        mediaGroup.add(new InputMediaPhoto(fileId));
-        messageIds.add(messageId);
+    private <T> T upload(String chatId, String source, TelegramOutboundScheduler.TelegramCall<T> call) throws TelegramApiException {
+        return outboundScheduler.execute(chatId, Priority.REPLY, () -> {
+            Timer.Sample sample = pipelineMetrics.start();
+            boolean success = false;
+            try {
+                T result = call.call();
+                success = true;
+                return result;
+            } finally {
+                pipelineMetrics.stop(sample, "telegram_upload", source, success);
+            }
+        });
+    }
 
-        logger.info("Uploaded photo and obtained file ID: " + fileId);
+    private static String largestPhotoFileId(Message message) {
+        List<PhotoSize> photoSizes = message.getPhoto();
+        return photoSizes.get(photoSizes.size() - 1).getFileId();
     }
 
     private static void deleteMediaAlbum(List<String> imagePaths) {
@@ -468,46 +604,105 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
         }
     }
 
-    private void deleteMessages(String chatId, List<String> messageIds) {
-        for (String messageId : messageIds) {
-            try {
-                DeleteMessage deleteMessage = new DeleteMessage();
-                deleteMessage.setChatId(chatId);
-                deleteMessage.setMessageId(Integer.parseInt(messageId));
+    private boolean sendCachedVideo(String chatId, String cacheKey) {
+        Optional<List<String>> fileIds = cacheKey != null ? fileIdCacheService.get(cacheKey) : Optional.empty();
+        if (fileIds.isEmpty()) {
+            return false;
+        }
 
-                execute(deleteMessage);
-                logger.info("Deleted message with ID: " + messageId);
-            } catch (TelegramApiException e) {
-                logger.error("Failed to delete message with ID: " + messageId, e);
-            }
+        SendVideo message = new SendVideo();
+        message.setChatId(chatId);
+        message.setVideo(new InputFile(fileIds.get().get(0)));
+        try {
+            outboundScheduler.execute(chatId, Priority.REPLY, () -> execute(message));
+            logger.info("Sent cached video for " + cacheKey);
+            return true;
+        } catch (TelegramApiException e) {
+            logger.warn("Cached file_id rejected for " + cacheKey + ", falling back to download", e);
+            fileIdCacheService.evict(cacheKey);
+            return false;
         }
     }
 
-    private void sendMediaGroup(String chatId, List<InputMediaPhoto> mediaGroup) {
-        SendMediaGroup sendMediaGroup = new SendMediaGroup();
-        sendMediaGroup.setChatId(chatId);
-        sendMediaGroup.setMedias(new ArrayList<>(mediaGroup));
+    private boolean sendCachedAudio(String chatId, String cacheKey) {
+        Optional<List<String>> fileIds = cacheKey != null ? fileIdCacheService.get(cacheKey) : Optional.empty();
+        if (fileIds.isEmpty()) {
+            return false;
+        }
 
+        SendAudio message = new SendAudio();
+        message.setChatId(chatId);
+        message.setAudio(new InputFile(fileIds.get().get(0)));
         try {
-            execute(sendMediaGroup);
-            logger.info("Media group sent to " + chatId);
-
+            outboundScheduler.execute(chatId, Priority.REPLY, () -> execute(message));
+            logger.info("Sent cached audio for " + cacheKey);
+            return true;
         } catch (TelegramApiException e) {
-            logger.error("Failed to send media group to " + chatId, e);
-            for (InputMediaPhoto media : mediaGroup) {
-                logger.error("Media file details: " + media.getMedia() + " | Type: " + media.getClass().getName());
+            logger.warn("Cached file_id rejected for " + cacheKey + ", falling back to download", e);
+            fileIdCacheService.evict(cacheKey);
+            return false;
+        }
+    }
+
+    /**
+     * Resends a cached slideshow album by album. If Telegram rejects an album, the cache entry is evicted and the
+     * result lists only the photos that were delivered before it, so the download fallback sends just the rest.
+     */
+    private CachedAlbum sendCachedAlbum(String chatId, String cacheKey) {
+        Optional<List<String>> fileIds = cacheKey != null ? fileIdCacheService.get(cacheKey) : Optional.empty();
+        if (fileIds.isEmpty()) {
+            return new CachedAlbum(List.of(), false);
+        }
+
+        List<String> ids = fileIds.get();
+        int start = 0;
+        try {
+            for (int albumSize : planAlbumSizes(ids.size())) {
+                List<String> albumIds = ids.subList(start, start + albumSize);
+
+                if (albumIds.size() == 1) {
+                    SendPhoto sendPhoto = new SendPhoto();
+                    sendPhoto.setChatId(chatId);
+                    sendPhoto.setPhoto(new InputFile(albumIds.get(0)));
+                    outboundScheduler.execute(chatId, Priority.REPLY, () -> execute(sendPhoto));
+                } else {
+                    List<InputMedia> album = new ArrayList<>();
+                    for (String fileId : albumIds) {
+                        album.add(new InputMediaPhoto(fileId));
+                    }
+                    SendMediaGroup sendMediaGroup = new SendMediaGroup();
+                    sendMediaGroup.setChatId(chatId);
+                    sendMediaGroup.setMedias(album);
+                    outboundScheduler.execute(chatId, Priority.REPLY, () -> execute(sendMediaGroup));
+                }
+                start += albumSize;
             }
+            logger.info("Sent cached album for " + cacheKey);
+            return new CachedAlbum(ids, true);
+        } catch (TelegramApiException e) {
+            logger.warn("Cached file_ids rejected for " + cacheKey + " after " + start + " of " + ids.size()
+                    + " photos, falling back to download", e);
+            fileIdCacheService.evict(cacheKey);
+            return new CachedAlbum(List.copyOf(ids.subList(0, start)), false);
         }
     }
 
-    public BufferedImage downloadImage(String fileId) {
+    /**
+     * File ids of the cached slides that reached the chat, and whether that was the whole slideshow.
+     */
+    private record CachedAlbum(List<String> delivered, boolean complete) {
+    }
+
+    public InputFile createMp4FromPhoto(String fileId) {
         try {
-            File telegramFile = execute(new GetFile(fileId));
+            File telegramFile = outboundScheduler.execute(null, Priority.REPLY, () -> execute(new GetFile(fileId)));
             String filePath = telegramFile.getFilePath();
 
             String fileUrl = "https://api.telegram.org/file/bot" + getBotToken() + "/" + filePath;
 
-            return ImageIO.read(new URL(fileUrl));
+            try (OutboundHttpClient.Response response = outboundHttpClient.get(fileUrl, Map.of())) {
+                return imageToMp4Converter.createMp4FromImage(response.body());
+            }
         } catch (TelegramApiException | IOException e) {
             logger.error("Failed to download image from Telegram: ", e);
             return null;
@@ -516,14 +711,15 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
 
     public InputFile downloadVideo(String fileId) {
         try {
-            File telegramFile = execute(new GetFile(fileId));
+            File telegramFile = outboundScheduler.execute(null, Priority.REPLY, () -> execute(new GetFile(fileId)));
             String filePath = telegramFile.getFilePath();
 
             String fileUrl = "https://api.telegram.org/file/bot" + getBotToken() + "/" + filePath;
 
             java.io.File tempVideoFile = java.io.File.createTempFile("temp_video", ".mp4");
 
-            try (InputStream inputStream = new URL(fileUrl).openStream();
+            try (OutboundHttpClient.Response response = outboundHttpClient.get(fileUrl, Map.of());
+                 InputStream inputStream = response.body();
                  OutputStream outputStream = new FileOutputStream(tempVideoFile)) {
                 byte[] buffer = new byte[4096];
                 int bytesRead;
@@ -547,7 +743,7 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
         message.setText(text);
 
         try {
-            execute(message);
+            outboundScheduler.execute(chatId, Priority.REPLY, () -> execute(message));
         } catch (TelegramApiException e) {
             logger.error("Error while sending message", e);
         }
@@ -560,44 +756,52 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
         message.setParseMode("HTML");
 
         try {
-            execute(message);
+            outboundScheduler.execute(chatId, Priority.BULK, () -> execute(message));
         } catch (TelegramApiException e) {
             logger.error("Error while sending message", e);
         }
     }
 
-    public void sendTikTokPhotoAudio(String chatId, InputFile audioFile) {
+    public void sendTikTokPhotoAudio(String chatId, InputFile audioFile, String cacheKey) {
         SendAudio message = new SendAudio();
         message.setChatId(chatId);
         message.setAudio(audioFile);
 
         try {
-            execute(message);
+            Message sentMessage = upload(chatId, "audio", () -> execute(message));
+            if (cacheKey != null && sentMessage.hasAudio()) {
+                fileIdCacheService.put(cacheKey, List.of(sentMessage.getAudio().getFileId()));
+            }
             tikTokSlideDownloadService.deleteFile(audioFile.getMediaName());
         } catch (TelegramApiException e) {
             logger.error("Error while sending message", e);
         }
     }
 
-    public void sendAudio(String chatId, InputFile audioFile) {
+    public void sendAudio(String chatId, InputFile audioFile, String cacheKey) {
         SendAudio message = new SendAudio();
         message.setChatId(chatId);
         message.setAudio(audioFile);
 
         try {
-            execute(message);
-            sendSongService.deleteFile(audioFile.getMediaName());
+            Message sentMessage = upload(chatId, "audio", () -> execute(message));
+            if (cacheKey != null && sentMessage.hasAudio()) {
+                fileIdCacheService.put(cacheKey, List.of(sentMessage.getAudio().getFileId()));
+            }
         } catch (TelegramApiException e) {
             logger.error("Error while sending message", e);
         }
     }
 
-    public String sendVideo(String chatId, InputFile videoFile) {
+    public String sendVideo(String chatId, InputFile videoFile, String cacheKey) {
         SendVideo message = new SendVideo();
         message.setChatId(chatId);
         message.setVideo(videoFile);
         try {
-            execute(message);
+            Message sentMessage = upload(chatId, "video", () -> execute(message));
+            if (cacheKey != null && sentMessage.hasVideo()) {
+                fileIdCacheService.put(cacheKey, List.of(sentMessage.getVideo().getFileId()));
+            }
         } catch (TelegramApiException e) {
             logger.error("Error while sending message", e);
         }
@@ -605,43 +809,50 @@ public class TiktokSenderBot extends TelegramLongPollingBot {
         return videoFile.getMediaName();
     }
 
-    public void sendTikTokVideo(String chatId, InputFile videoFile) {
-        String fileName = sendVideo(chatId, videoFile);
-
-        try {
-            logger.info("Deleting video file: " + fileName);
-            if (fileName != null) {
-                sendTikTokService.deleteVideoFile(fileName);
-            }
+    public void sendLeasedVideo(String chatId, MediaLease videoLease, String cacheKey) {
+        try (videoLease) {
+            sendVideo(chatId, new InputFile(videoLease.getFile(), videoLease.getUploadName()), cacheKey);
         } catch (Exception e) {
-            logger.error("Error while deleting video file", e);
+            logger.error("Error while sending video file", e);
         }
     }
 
-    public void sendReelVideo(String chatId, InputFile videoFile) {
-        String fileName = sendVideo(chatId, videoFile);
+    public String sendGif(String chatId, InputFile mp4File) {
+        SendAnimation message = new SendAnimation();
+        message.setChatId(chatId);
+        message.setAnimation(mp4File);
 
         try {
-            logger.info("Deleting video file: " + fileName);
-            if (fileName != null) {
-                sendReelService.deleteVideoFile(fileName);
+            Message sentMessage = upload(chatId, "animation", () -> execute(message));
+            if (sentMessage.getAnimation() != null) {
+                return sentMessage.getAnimation().getFileId();
             }
-        } catch (Exception e) {
-            logger.error("Error while deleting video file", e);
+            if (sentMessage.getDocument() != null) {
+                return sentMessage.getDocument().getFileId();
+            }
+        } catch (TelegramApiException e) {
+            logger.error("Error while sending GIF", e);
         }
+        return null;
     }
 
-    public void sendGif(String chatId, InputFile mp4File) {
+    private boolean sendCachedAnimation(String chatId, String cacheKey) {
+        Optional<String> fileId = conversionCacheService.get(cacheKey);
+        if (fileId.isEmpty()) {
+            return false;
+        }
+
         SendAnimation message = new SendAnimation();
         message.setChatId(chatId);
-        message.setAnimation(mp4File);
-
+        message.setAnimation(new InputFile(fileId.get()));
         try {
-            execute(message);
-            logger.info("Deleting video file...");
-            imageToMp4Converter.deleteOutputFile();
+            outboundScheduler.execute(chatId, Priority.REPLY, () -> execute(message));
+            logger.info("Sent cached animation for " + cacheKey);
+            return true;
         } catch (TelegramApiException e) {
-            logger.error("Error while sending GIF", e);
+            logger.warn("Cached animation file_id rejected for " + cacheKey + ", converting again", e);
+            conversionCacheService.evict(cacheKey);
+            return false;
         }
     }
 }
\ No newline at end of file
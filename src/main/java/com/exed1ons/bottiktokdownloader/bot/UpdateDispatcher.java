@@ -0,0 +1,207 @@
+package com.exed1ons.bottiktokdownloader.bot;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hands updates from the polling thread over to worker pools.
+ * Updates of one chat are processed in the order they arrived, while different chats run in parallel.
+ * Cheap commands go through a separate fast lane so they never wait behind downloads and conversions.
+ * Each lane accepts at most {@code bot.dispatcher.max-pending} unfinished updates; beyond that the polling
+ * thread waits for room, which leaves further updates queued at Telegram.
+ */
+@Component
+public class UpdateDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    private static final Set<String> FAST_COMMANDS = Set.of("/init", "/addrole", "/setrole", "/removerole", "/unsetrole", "/tag");
+
+    private final Lane mediaLane;
+    private final Lane fastLane;
+    private final Map<String, CompletableFuture<Void>> chatQueues = new ConcurrentHashMap<>();
+
+    public UpdateDispatcher(@Value("${bot.dispatcher.media-workers:8}") int mediaWorkers,
+                            @Value("${bot.dispatcher.fast-workers:2}") int fastWorkers,
+                            @Value("${bot.dispatcher.virtual-threads:false}") boolean virtualThreads,
+                            @Value("${bot.dispatcher.max-pending:1000}") int maxPending,
+                            MeterRegistry meterRegistry) {
+        this.mediaLane = new Lane("media", createExecutor("media-worker-", mediaWorkers, maxPending, virtualThreads), maxPending);
+        this.fastLane = new Lane("fast", createExecutor("fast-worker-", fastWorkers, maxPending, virtualThreads), maxPending);
+
+        Gauge.builder("bot.dispatcher.queue", mediaLane, Lane::waiting)
+                .description("Updates waiting for a worker")
+                .tag("lane", "media")
+                .register(meterRegistry);
+        Gauge.builder("bot.dispatcher.queue", fastLane, Lane::waiting)
+                .description("Updates waiting for a worker")
+                .tag("lane", "fast")
+                .register(meterRegistry);
+        Gauge.builder("bot.dispatcher.active", mediaLane.executor, ThreadPoolExecutor::getActiveCount)
+                .description("Updates being processed")
+                .tag("lane", "media")
+                .register(meterRegistry);
+    }
+
+    public void dispatchAll(List<Update> updates, Consumer<Update> handler) {
+        for (Update update : updates) {
+            dispatch(update, handler);
+        }
+    }
+
+    public void dispatch(Update update, Consumer<Update> handler) {
+        Lane lane = !update.hasMessage() || isFastLane(update.getMessage()) ? fastLane : mediaLane;
+        if (!lane.reserve()) {
+            logger.warn("Dropped update " + update.getUpdateId() + ": interrupted while waiting for the " + lane.name + " lane");
+            return;
+        }
+
+        Runnable task = () -> {
+            lane.running.incrementAndGet();
+            try {
+                handler.accept(update);
+            } catch (Exception e) {
+                logger.error("Failed to process update " + update.getUpdateId(), e);
+            } finally {
+                lane.running.decrementAndGet();
+            }
+        };
+
+        if (!update.hasMessage()) {
+            CompletableFuture.runAsync(task, lane.executor).whenComplete((result, e) -> lane.release(update, e));
+            return;
+        }
+
+        String key = lane.name + ":" + update.getMessage().getChatId();
+        CompletableFuture<Void> next = chatQueues.compute(key, (k, tail) ->
+                (tail == null ? CompletableFuture.<Void>completedFuture(null) : tail.exceptionally(e -> null))
+                        .thenRunAsync(task, lane.executor));
+        next.whenComplete((result, e) -> {
+            chatQueues.remove(key, next);
+            lane.release(update, e);
+        });
+    }
+
+    public int getQueuedTasks() {
+        return mediaLane.waiting() + fastLane.waiting();
+    }
+
+    private static boolean isFastLane(Message message) {
+        if (!message.hasText()) {
+            return false;
+        }
+        String text = message.getText();
+        if (text.startsWith("@")) {
+            return true;
+        }
+        if (!text.startsWith("/")) {
+            return false;
+        }
+        String command = text.split("\\s+", 2)[0];
+        int botSuffix = command.indexOf('@');
+        if (botSuffix > 0) {
+            command = command.substring(0, botSuffix);
+        }
+        return FAST_COMMANDS.contains(command);
+    }
+
+    private static ThreadPoolExecutor createExecutor(String namePrefix, int workers, int capacity, boolean virtualThreads) {
+        ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory(namePrefix) : null;
+        if (threadFactory == null) {
+            if (virtualThreads) {
+                logger.warn("Virtual threads are not available on this JVM, using platform threads for " + namePrefix);
+            }
+            AtomicLong counter = new AtomicLong();
+            threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+        return new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(capacity), threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        mediaLane.executor.shutdown();
+        fastLane.executor.shutdown();
+    }
+
+    /**
+     * A worker pool with its own count of updates that were accepted but have not finished. Updates chained behind
+     * an earlier update of the same chat only reach the executor queue once that one is done, so the executor
+     * queue alone would not show them.
+     */
+    private static final class Lane {
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final Semaphore capacity;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+
+        private Lane(String name, ThreadPoolExecutor executor, int maxPending) {
+            this.name = name;
+            this.executor = executor;
+            this.capacity = new Semaphore(maxPending);
+        }
+
+        private boolean reserve() {
+            if (!capacity.tryAcquire()) {
+                logger.warn("The " + name + " lane has " + pending.get() + " pending updates, waiting for room");
+                try {
+                    capacity.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            pending.incrementAndGet();
+            return true;
+        }
+
+        private void release(Update update, Throwable error) {
+            if (error != null) {
+                logger.error("Update " + update.getUpdateId() + " was not processed by the " + name + " lane", error);
+            }
+            pending.decrementAndGet();
+            capacity.release();
+        }
+
+        private int waiting() {
+            return Math.max(0, pending.get() - running.get());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.exed1ons.bottiktokdownloader.controller;
+
+import com.exed1ons.bottiktokdownloader.bot.TiktokSenderBot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Receives updates pushed by Telegram when {@code bot.mode=webhook}. The update is handed to the
+ * dispatcher and acknowledged at once, so Telegram never waits for a download to finish.
+ */
+@RestController
+@ConditionalOnProperty(name = "bot.mode", havingValue = "webhook")
+public class WebhookController {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookController.class);
+
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final TiktokSenderBot tiktokSenderBot;
+    private final byte[] secretToken;
+
+    public WebhookController(TiktokSenderBot tiktokSenderBot, @Value("${bot.webhook.secret:}") String secretToken) {
+        this.tiktokSenderBot = tiktokSenderBot;
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping("${bot.webhook.path:/telegram/webhook}")
+    public ResponseEntity<Void> receiveUpdate(@RequestHeader(value = SECRET_HEADER, required = false) String secret,
+                                              @RequestBody Update update) {
+        if (secretToken.length == 0 || secret == null
+                || !MessageDigest.isEqual(secretToken, secret.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Rejected webhook call with a missing or wrong secret token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        tiktokSenderBot.onUpdateReceived(update);
+        return ResponseEntity.ok().build();
+    }
+}
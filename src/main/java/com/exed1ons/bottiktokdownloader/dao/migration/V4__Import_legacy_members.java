@@ -0,0 +1,103 @@
+package com.exed1ons.bottiktokdownloader.dao.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Copies members, roles and role assignments from the global {@code members}, {@code roles} and {@code member_roles}
+ * tables into the chat-scoped tables, then renames the old tables to {@code legacy_*}. The old rows carry no chat,
+ * so they go to the chat named by the {@code legacy_chat_id} placeholder; with the default of 0 they stay in chat 0
+ * and each group copies out the members it confirms on /init (see {@code GroupMemberBulkRepository#claimLegacyRows}).
+ * Nothing happens on a database that never had the old tables.
+ */
+public class V4__Import_legacy_members extends BaseJavaMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(V4__Import_legacy_members.class);
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        if (!tableExists(connection, "members")) {
+            logger.info("No legacy member tables, nothing to import");
+            return;
+        }
+        long chatId = Long.parseLong(context.getConfiguration().getPlaceholders().getOrDefault("legacy_chat_id", "0"));
+        String userName = column(connection, "members", "user_name", "username");
+        String firstName = column(connection, "members", "first_name", "firstname");
+
+        int members = update(connection, "INSERT INTO chat_members (chat_id, user_id, user_name, first_name, user_name_normalized) "
+                + "SELECT ?, m.id, m." + userName + ", m." + firstName + ", LOWER(m." + userName + ") FROM members m "
+                + "WHERE NOT EXISTS (SELECT 1 FROM chat_members c WHERE c.chat_id = ? AND c.user_id = m.id)", chatId);
+
+        int roles = 0;
+        int assignments = 0;
+        if (tableExists(connection, "roles")) {
+            roles = update(connection, "INSERT INTO chat_roles (chat_id, role_name) "
+                    + "SELECT DISTINCT ?, r.name FROM roles r WHERE r.name IS NOT NULL "
+                    + "AND NOT EXISTS (SELECT 1 FROM chat_roles c WHERE c.chat_id = ? AND c.role_name = r.name)", chatId);
+
+            if (tableExists(connection, "member_roles")) {
+                assignments = update(connection, "INSERT INTO chat_member_roles (chat_id, role_name, user_id) "
+                        + "SELECT DISTINCT ?, r.name, mr.member_id FROM member_roles mr "
+                        + "JOIN roles r ON r.id = mr.role_id JOIN members m ON m.id = mr.member_id "
+                        + "WHERE r.name IS NOT NULL AND NOT EXISTS (SELECT 1 FROM chat_member_roles c "
+                        + "WHERE c.chat_id = ? AND c.role_name = r.name AND c.user_id = mr.member_id)", chatId);
+                rename(connection, "member_roles");
+            }
+            rename(connection, "roles");
+        }
+        rename(connection, "members");
+
+        logger.info("Imported " + members + " legacy members, " + roles + " roles and " + assignments
+                + " role assignments into chat " + chatId);
+    }
+
+    private static int update(Connection connection, String sql, long chatId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, chatId);
+            statement.setLong(2, chatId);
+            return statement.executeUpdate();
+        }
+    }
+
+    private static void rename(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE " + table + " RENAME TO legacy_" + table);
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet tables = metaData.getTables(connection.getCatalog(), connection.getSchema(), name, new String[]{"TABLE"})) {
+                if (tables.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String column(Connection connection, String table, String... candidates) throws SQLException {
+        try (ResultSet columns = connection.getMetaData().getColumns(connection.getCatalog(), connection.getSchema(), table, null)) {
+            while (columns.next()) {
+                String name = columns.getString("COLUMN_NAME");
+                for (String candidate : candidates) {
+                    if (name.equalsIgnoreCase(candidate)) {
+                        return name.equals(name.toLowerCase()) ? name : "\"" + name + "\"";
+                    }
+                }
+            }
+        }
+        throw new SQLException("Legacy table " + table + " has none of the columns " + String.join(", ", candidates));
+    }
+}
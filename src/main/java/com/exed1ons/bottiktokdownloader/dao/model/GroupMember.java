@@ -4,10 +4,11 @@ import jakarta.persistence.*;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 
-import java.util.List;
+import java.util.Locale;
 
 @Entity
-@Table(name = "members")
+@Table(name = "chat_members")
+@IdClass(GroupMemberId.class)
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Builder
 @AllArgsConstructor
@@ -19,22 +20,29 @@ import java.util.List;
 public class GroupMember {
 
     @Id
-    @Column(name = "id")
+    @Column(name = "chat_id")
+    Long chatId;
+
+    @Id
+    @Column(name = "user_id")
     Long id;
 
-    @Column(name = "userName")
+    @Column(name = "user_name")
     String userName;
 
-    @Column(name = "firstName")
+    @Column(name = "first_name")
     String firstName;
 
-    @ManyToMany
-    @JoinTable(
-            name = "member_roles",
-            joinColumns = @JoinColumn(name = "member_id"),
-            inverseJoinColumns = @JoinColumn(name = "role_id")
-    )
+    @Column(name = "user_name_normalized")
+    String userNameNormalized;
+
+    public static String normalizeUserName(String userName) {
+        return userName != null ? userName.toLowerCase(Locale.ROOT) : null;
+    }
 
-    @ToString.Exclude
-    List<Role> roles;
-}
\ No newline at end of file
+    @PrePersist
+    @PreUpdate
+    void normalize() {
+        userNameNormalized = normalizeUserName(userName);
+    }
+}
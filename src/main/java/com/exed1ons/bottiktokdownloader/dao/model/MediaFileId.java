@@ -0,0 +1,30 @@
+package com.exed1ons.bottiktokdownloader.dao.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "media_file_ids")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class MediaFileId {
+
+    @Id
+    @Column(name = "cache_key")
+    String cacheKey;
+
+    @Column(name = "file_ids", nullable = false, columnDefinition = "TEXT")
+    String fileIds;
+
+    @Column(name = "created_at", nullable = false)
+    Instant createdAt;
+}
@@ -0,0 +1,31 @@
+package com.exed1ons.bottiktokdownloader.dao.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+@Entity
+@Table(name = "chat_member_roles")
+@IdClass(MemberRoleId.class)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class MemberRole {
+
+    @Id
+    @Column(name = "chat_id")
+    Long chatId;
+
+    @Id
+    @Column(name = "role_name")
+    String roleName;
+
+    @Id
+    @Column(name = "user_id")
+    Long userId;
+}
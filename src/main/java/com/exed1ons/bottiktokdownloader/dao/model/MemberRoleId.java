@@ -0,0 +1,22 @@
+package com.exed1ons.bottiktokdownloader.dao.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.io.Serializable;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class MemberRoleId implements Serializable {
+
+    Long chatId;
+
+    String roleName;
+
+    Long userId;
+}
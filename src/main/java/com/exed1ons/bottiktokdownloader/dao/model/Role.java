@@ -6,7 +6,8 @@ import lombok.*;
 import lombok.experimental.FieldDefaults;
 
 @Entity
-@Table(name = "roles")
+@Table(name = "chat_roles")
+@IdClass(RoleId.class)
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Builder
 @AllArgsConstructor
@@ -18,10 +19,10 @@ import lombok.experimental.FieldDefaults;
 public class Role {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Column(name = "id")
-    Long id;
+    @Column(name = "chat_id")
+    Long chatId;
 
-    @Column(name = "name", unique = true)
+    @Id
+    @Column(name = "role_name")
     String name;
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package com.exed1ons.bottiktokdownloader.dao.model;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.io.Serializable;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode
+public class RoleId implements Serializable {
+
+    Long chatId;
+
+    String name;
+}
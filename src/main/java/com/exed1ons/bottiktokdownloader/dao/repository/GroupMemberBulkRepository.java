@@ -0,0 +1,110 @@
+package com.exed1ons.bottiktokdownloader.dao.repository;
+
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes members in bulk with plain JDBC. Members go out as multi-row {@code INSERT ... ON CONFLICT DO UPDATE}
+ * statements of up to {@value #BATCH_SIZE} rows, so importing a whole chat takes a few round trips.
+ * Rows whose username and first name did not change are left untouched and are not counted as affected.
+ */
+@Repository
+public class GroupMemberBulkRepository {
+
+    /**
+     * Chat that holds members and roles imported from the global tables that predate chat scoping. Groups copy
+     * the members they confirm out of it, see {@link #claimLegacyRows}.
+     */
+    public static final long LEGACY_CHAT_ID = 0;
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String UPSERT_MEMBERS = "INSERT INTO chat_members (chat_id, user_id, user_name, first_name, user_name_normalized) VALUES ";
+    private static final String MEMBER_ROW = "(?, ?, ?, ?, ?)";
+    private static final String ON_CONFLICT = """
+             ON CONFLICT (chat_id, user_id) DO UPDATE
+                SET user_name = EXCLUDED.user_name,
+                    first_name = EXCLUDED.first_name,
+                    user_name_normalized = EXCLUDED.user_name_normalized
+                WHERE chat_members.user_name IS DISTINCT FROM EXCLUDED.user_name
+                   OR chat_members.first_name IS DISTINCT FROM EXCLUDED.first_name
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public GroupMemberBulkRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Upserts {@code members}, which must not repeat a (chat, user) pair: one statement cannot update a row twice.
+     * Returns the number of rows inserted or changed. Each chunk is a single statement rather than a JDBC batch
+     * because the driver reports no row counts for batches it rewrites.
+     */
+    public int upsertAll(List<GroupMember> members) {
+        int affected = 0;
+        for (int from = 0; from < members.size(); from += BATCH_SIZE) {
+            List<GroupMember> chunk = members.subList(from, Math.min(members.size(), from + BATCH_SIZE));
+            String sql = UPSERT_MEMBERS + String.join(", ", Collections.nCopies(chunk.size(), MEMBER_ROW)) + ON_CONFLICT;
+            affected += jdbcTemplate.update(sql, statement -> {
+                int index = 1;
+                for (GroupMember member : chunk) {
+                    statement.setLong(index++, member.getChatId());
+                    statement.setLong(index++, member.getId());
+                    statement.setString(index++, member.getUserName());
+                    statement.setString(index++, member.getFirstName());
+                    statement.setString(index++, GroupMember.normalizeUserName(member.getUserName()));
+                }
+            });
+        }
+        return affected;
+    }
+
+    /**
+     * Copies the legacy members among {@code userIds} into {@code chatId}, with the roles they held and their
+     * assignments to them, keeping rows the chat already has. The legacy rows carry no chat, so a chat only gets
+     * the users it has confirmed as its own; the rows stay in place for other chats those users belong to.
+     * Returns the number of legacy members copied.
+     */
+    public int claimLegacyRows(long chatId, Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        String users = String.join(", ", Collections.nCopies(userIds.size(), "?"));
+
+        int members = jdbcTemplate.update("""
+                INSERT INTO chat_members (chat_id, user_id, user_name, first_name, user_name_normalized)
+                SELECT ?, l.user_id, l.user_name, l.first_name, l.user_name_normalized FROM chat_members l
+                WHERE l.chat_id = ? AND l.user_id IN (%s) AND NOT EXISTS
+                    (SELECT 1 FROM chat_members c WHERE c.chat_id = ? AND c.user_id = l.user_id)
+                """.formatted(users), claimArguments(chatId, userIds));
+        jdbcTemplate.update("""
+                INSERT INTO chat_roles (chat_id, role_name)
+                SELECT DISTINCT ?, l.role_name FROM chat_member_roles l
+                WHERE l.chat_id = ? AND l.user_id IN (%s) AND NOT EXISTS
+                    (SELECT 1 FROM chat_roles c WHERE c.chat_id = ? AND c.role_name = l.role_name)
+                """.formatted(users), claimArguments(chatId, userIds));
+        jdbcTemplate.update("""
+                INSERT INTO chat_member_roles (chat_id, role_name, user_id)
+                SELECT ?, l.role_name, l.user_id FROM chat_member_roles l
+                WHERE l.chat_id = ? AND l.user_id IN (%s) AND NOT EXISTS (SELECT 1 FROM chat_member_roles c
+                    WHERE c.chat_id = ? AND c.role_name = l.role_name AND c.user_id = l.user_id)
+                """.formatted(users), claimArguments(chatId, userIds));
+        return members;
+    }
+
+    private static Object[] claimArguments(long chatId, Collection<Long> userIds) {
+        List<Object> arguments = new ArrayList<>();
+        arguments.add(chatId);
+        arguments.add(LEGACY_CHAT_ID);
+        arguments.addAll(userIds);
+        arguments.add(chatId);
+        return arguments.toArray();
+    }
+}
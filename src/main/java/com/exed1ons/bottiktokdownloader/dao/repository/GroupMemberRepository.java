@@ -2,18 +2,26 @@ package com.exed1ons.bottiktokdownloader.dao.repository;
 
 
 import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMemberId;
 import jakarta.annotation.Nonnull;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 import java.util.Optional;
 
-public interface GroupMemberRepository extends JpaRepository<GroupMember, Long> {
+public interface GroupMemberRepository extends JpaRepository<GroupMember, GroupMemberId> {
 
-    @Query("SELECT gm FROM GroupMember gm JOIN gm.roles r WHERE r.name = :roleName")
-    List<GroupMember> findByRoleName(@Nonnull String roleName);
-    Optional<GroupMember> findByUserName(String username);
+    @Query("SELECT gm FROM GroupMember gm JOIN MemberRole mr ON mr.chatId = gm.chatId AND mr.userId = gm.id "
+            + "WHERE mr.chatId = :chatId AND mr.roleName = :roleName AND mr.userId > :afterId ORDER BY mr.userId")
+    List<GroupMember> findPageByChatIdAndRoleName(@Nonnull Long chatId, @Nonnull String roleName, @Nonnull Long afterId, Limit limit);
 
+    List<GroupMember> findByChatIdAndIdGreaterThanOrderByIdAsc(Long chatId, Long afterId, Limit limit);
 
-}
\ No newline at end of file
+    Optional<GroupMember> findByChatIdAndUserNameNormalized(Long chatId, String userNameNormalized);
+
+    boolean existsByChatIdAndId(Long chatId, Long id);
+
+
+}
@@ -0,0 +1,7 @@
+package com.exed1ons.bottiktokdownloader.dao.repository;
+
+import com.exed1ons.bottiktokdownloader.dao.model.MediaFileId;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface MediaFileIdRepository extends JpaRepository<MediaFileId, String> {
+}
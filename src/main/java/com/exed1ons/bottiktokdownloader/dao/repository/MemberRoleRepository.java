@@ -0,0 +1,8 @@
+package com.exed1ons.bottiktokdownloader.dao.repository;
+
+import com.exed1ons.bottiktokdownloader.dao.model.MemberRole;
+import com.exed1ons.bottiktokdownloader.dao.model.MemberRoleId;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface MemberRoleRepository extends JpaRepository<MemberRole, MemberRoleId> {
+}
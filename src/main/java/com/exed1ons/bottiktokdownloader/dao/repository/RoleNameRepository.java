@@ -1,14 +1,18 @@
 package com.exed1ons.bottiktokdownloader.dao.repository;
 
 import com.exed1ons.bottiktokdownloader.dao.model.Role;
+import com.exed1ons.bottiktokdownloader.dao.model.RoleId;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
 import java.util.Optional;
 
-public interface RoleNameRepository extends JpaRepository<Role, Long> {
+public interface RoleNameRepository extends JpaRepository<Role, RoleId> {
 
-    Optional<Role> findByName(String name);
+    List<Role> findByChatId(Long chatId);
 
-    Optional<Role> removeByName(String name);
+    boolean existsByChatIdAndName(Long chatId, String name);
 
-}
\ No newline at end of file
+    Optional<Role> removeByChatIdAndName(Long chatId, String name);
+
+}
@@ -0,0 +1,55 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import com.exed1ons.bottiktokdownloader.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Remembers the animation file_id produced by /gif for a source file, keyed by the source's
+ * file_unique_id and the conversion parameters, so converting the same meme again is a single SendAnimation.
+ */
+@Service
+public class ConversionCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionCacheService.class);
+
+    private final LruCache<String, String> animations;
+
+    public ConversionCacheService(@Value("${cache.conversion.size:500}") int cacheSize) {
+        this.animations = new LruCache<>(cacheSize);
+    }
+
+    public static String key(String sourceFileUniqueId, String conversionParameters) {
+        return sourceFileUniqueId + ":" + conversionParameters;
+    }
+
+    public Optional<String> get(String cacheKey) {
+        String fileId = animations.get(cacheKey);
+        logger.info("Conversion cache " + (fileId != null ? "hit" : "miss") + " for " + cacheKey
+                + ", hit ratio: " + String.format("%.2f", animations.getHitRatio())
+                + " (" + animations.getHits() + "/" + (animations.getHits() + animations.getMisses()) + ")");
+        return Optional.ofNullable(fileId);
+    }
+
+    public void put(String cacheKey, String fileId) {
+        if (fileId != null) {
+            animations.put(cacheKey, fileId);
+        }
+    }
+
+    public void evict(String cacheKey) {
+        animations.remove(cacheKey);
+    }
+
+    public double getHitRatio() {
+        return animations.getHitRatio();
+    }
+
+    public int size() {
+        return animations.size();
+    }
+}
@@ -0,0 +1,154 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response body that has to arrive before a deadline. Each read waits for the next chunk only as long as is left;
+ * once the deadline passes the exchange is cancelled and the read fails with {@link HttpTimeoutException}, so a
+ * server that stalls mid-body cannot hold the caller's thread.
+ */
+final class DeadlineBodyStream extends InputStream implements Flow.Subscriber<List<ByteBuffer>> {
+
+    private static final List<ByteBuffer> END = Collections.unmodifiableList(new ArrayList<>());
+
+    private final BlockingQueue<List<ByteBuffer>> chunks = new LinkedBlockingQueue<>();
+    private final URI uri;
+    private final Duration timeout;
+    private final long deadline;
+
+    private volatile Flow.Subscription subscription;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+
+    private Iterator<ByteBuffer> queued = Collections.emptyIterator();
+    private ByteBuffer current;
+    private boolean finished;
+
+    DeadlineBodyStream(URI uri, Duration timeout) {
+        this.uri = uri;
+        this.timeout = timeout;
+        this.deadline = System.nanoTime() + timeout.toNanos();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (closed) {
+            subscription.cancel();
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+        chunks.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        failure = throwable;
+        chunks.add(END);
+    }
+
+    @Override
+    public void onComplete() {
+        chunks.add(END);
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuffer buffer = nextBuffer();
+        return buffer == null ? -1 : buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = nextBuffer();
+        if (buffer == null) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.remaining();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+        chunks.clear();
+    }
+
+    private ByteBuffer nextBuffer() throws IOException {
+        while (current == null || !current.hasRemaining()) {
+            if (closed) {
+                throw new IOException("Response body from " + uri + " is closed");
+            }
+            if (queued.hasNext()) {
+                current = queued.next();
+                continue;
+            }
+            if (finished) {
+                return null;
+            }
+
+            List<ByteBuffer> chunk = take();
+            if (chunk == END) {
+                finished = true;
+                if (failure != null) {
+                    throw new IOException("Failed to read response body from " + uri, failure);
+                }
+                return null;
+            }
+            queued = chunk.iterator();
+            subscription.request(1);
+        }
+        return current;
+    }
+
+    private List<ByteBuffer> take() throws IOException {
+        List<ByteBuffer> chunk;
+        try {
+            long remaining = deadline - System.nanoTime();
+            chunk = remaining > 0 ? chunks.poll(remaining, TimeUnit.NANOSECONDS) : chunks.poll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new InterruptedIOException("Interrupted while reading response body from " + uri);
+        }
+        if (chunk == null) {
+            close();
+            throw new HttpTimeoutException("Response body from " + uri + " was not received within " + timeout);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,100 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import com.exed1ons.bottiktokdownloader.dao.model.MediaFileId;
+import com.exed1ons.bottiktokdownloader.dao.repository.MediaFileIdRepository;
+import com.exed1ons.bottiktokdownloader.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Remembers the Telegram file_ids of media that was already uploaded, so a repeated link can be answered
+ * by re-sending the file_id instead of downloading and uploading the file again.
+ * Lookups go to an in-memory LRU first and fall back to the media_file_ids table.
+ */
+@Service
+public class FileIdCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileIdCacheService.class);
+
+    private static final String SEPARATOR = ",";
+
+    private final MediaFileIdRepository mediaFileIdRepository;
+    private final LruCache<String, List<String>> memoryCache;
+
+    public FileIdCacheService(MediaFileIdRepository mediaFileIdRepository,
+                              @Value("${cache.file-id.memory-size:1000}") int memorySize) {
+        this.mediaFileIdRepository = mediaFileIdRepository;
+        this.memoryCache = new LruCache<>(memorySize);
+    }
+
+    public static String tikTokVideoKey(String videoId) {
+        return "tiktok:video:" + videoId;
+    }
+
+    public static String tikTokSlidesKey(String postId) {
+        return "tiktok:photo:" + postId;
+    }
+
+    public static String tikTokSlidesAudioKey(String postId) {
+        return "tiktok:photo-audio:" + postId;
+    }
+
+    public static String instagramReelKey(String shortcode) {
+        return "instagram:reel:" + shortcode;
+    }
+
+    public static String spotifyTrackKey(String trackId) {
+        return "spotify:track:" + trackId;
+    }
+
+    public Optional<List<String>> get(String cacheKey) {
+        List<String> fileIds = memoryCache.get(cacheKey);
+        if (fileIds != null) {
+            return Optional.of(fileIds);
+        }
+
+        try {
+            Optional<List<String>> stored = mediaFileIdRepository.findById(cacheKey)
+                    .map(entry -> List.of(entry.getFileIds().split(SEPARATOR)));
+            stored.ifPresent(ids -> memoryCache.put(cacheKey, ids));
+            return stored;
+        } catch (Exception e) {
+            logger.error("Failed to read file_id cache entry: " + cacheKey, e);
+            return Optional.empty();
+        }
+    }
+
+    public void put(String cacheKey, List<String> fileIds) {
+        if (fileIds == null || fileIds.isEmpty()) {
+            return;
+        }
+        List<String> ids = List.copyOf(fileIds);
+        memoryCache.put(cacheKey, ids);
+
+        try {
+            mediaFileIdRepository.save(MediaFileId.builder()
+                    .cacheKey(cacheKey)
+                    .fileIds(String.join(SEPARATOR, ids))
+                    .createdAt(Instant.now())
+                    .build());
+            logger.info("Cached " + ids.size() + " file_id(s) for " + cacheKey);
+        } catch (Exception e) {
+            logger.error("Failed to store file_id cache entry: " + cacheKey, e);
+        }
+    }
+
+    public void evict(String cacheKey) {
+        memoryCache.remove(cacheKey);
+        try {
+            mediaFileIdRepository.deleteById(cacheKey);
+        } catch (Exception e) {
+            logger.error("Failed to evict file_id cache entry: " + cacheKey, e);
+        }
+    }
+}
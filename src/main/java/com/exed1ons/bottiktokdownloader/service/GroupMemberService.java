@@ -1,7 +1,12 @@
 package com.exed1ons.bottiktokdownloader.service;
 
 import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMemberId;
+import com.exed1ons.bottiktokdownloader.dao.model.MemberRole;
+import com.exed1ons.bottiktokdownloader.dao.model.MemberRoleId;
+import com.exed1ons.bottiktokdownloader.dao.repository.GroupMemberBulkRepository;
 import com.exed1ons.bottiktokdownloader.dao.repository.GroupMemberRepository;
+import com.exed1ons.bottiktokdownloader.dao.repository.MemberRoleRepository;
 import com.exed1ons.bottiktokdownloader.dao.repository.RoleNameRepository;
 import jakarta.annotation.Nonnull;
 
@@ -10,8 +15,12 @@ import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 @Service
 @Transactional
@@ -20,58 +29,105 @@ public class GroupMemberService {
 
     private final GroupMemberRepository groupMemberRepository;
 
+    private final GroupMemberBulkRepository groupMemberBulkRepository;
+
     private final RoleNameRepository roleNameRepository;
 
-    public void addMember(Long id, String userName, String firstName) {
-        groupMemberRepository.save(GroupMember.builder()
-                .id(id)
-                .userName(userName)
-                .firstName(firstName)
-                .build());
+    private final MemberRoleRepository memberRoleRepository;
+
+    private final RoleMembersCache roleMembersCache;
+
+    /**
+     * Adds or refreshes every member in {@code members} for {@code chatId} with one batched upsert.
+     * Duplicates keep their last occurrence, and rows are written in user id order so concurrent imports
+     * into the same chat lock them in the same order. Returns the number of members that were new or changed;
+     * the chat's cached member lists are dropped only when that is above zero.
+     */
+    public int importMembers(@Nonnull Long chatId, @Nonnull Collection<GroupMember> members) {
+        Map<Long, GroupMember> byUserId = new TreeMap<>();
+        for (GroupMember member : members) {
+            byUserId.put(member.getId(), GroupMember.builder()
+                    .chatId(chatId)
+                    .id(member.getId())
+                    .userName(member.getUserName())
+                    .firstName(member.getFirstName())
+                    .build());
+        }
+        if (byUserId.isEmpty()) {
+            return 0;
+        }
+
+        int changed = groupMemberBulkRepository.upsertAll(new ArrayList<>(byUserId.values()));
+        if (changed > 0) {
+            roleMembersCache.invalidateMembers(chatId);
+        }
+        return changed;
     }
 
 
-    public List<GroupMember> findByRoleName(@Nonnull String roleName) {
-        return groupMemberRepository.findByRoleName(roleName);
+    /**
+     * Gives {@code chatId} the members among {@code userIds} imported from before chats were tracked, with their
+     * roles and role assignments. Returns the number of members copied.
+     */
+    public int claimLegacyMembers(@Nonnull Long chatId, @Nonnull Collection<Long> userIds) {
+        int claimed = groupMemberBulkRepository.claimLegacyRows(chatId, userIds);
+        if (claimed > 0) {
+            roleMembersCache.invalidateChat(chatId);
+        }
+        return claimed;
     }
 
 
-    public Optional<GroupMember> findById(Long id) {
-        return groupMemberRepository.findById(id);
+    public boolean isKnownRole(@Nonnull Long chatId, @Nonnull String roleName) {
+        return roleMembersCache.isKnownRole(chatId, roleName);
     }
 
 
-    public List<GroupMember> findAll() {
-        return groupMemberRepository.findAll();
+    /**
+     * One page of members of {@code chatId} to mention, ordered by user id and starting after {@code afterId}
+     * ({@code null} for the first page). A {@code null} {@code roleName} pages through every member of the chat.
+     */
+    public List<GroupMember> findMentionPage(@Nonnull Long chatId, String roleName, Long afterId, int limit) {
+        return roleMembersCache.getPage(chatId, roleName, afterId, limit);
     }
 
 
-    public Optional<GroupMember> findByUserName(String username) {
-        return groupMemberRepository.findByUserName(username);
+    public Optional<GroupMember> findById(Long chatId, Long id) {
+        return groupMemberRepository.findById(new GroupMemberId(chatId, id));
     }
 
 
-    public void assignRoleToMember(@Nonnull final Long memberId, @Nonnull final String roleName) {
-        var member = groupMemberRepository.findById(memberId)
-                .orElseThrow(() -> new EntityNotFoundException("Member not found"));
+    public Optional<GroupMember> findByUserName(Long chatId, String username) {
+        return groupMemberRepository.findByChatIdAndUserNameNormalized(chatId, GroupMember.normalizeUserName(username));
+    }
 
-        var role = roleNameRepository.findByName(roleName)
-                .orElseThrow(() -> new EntityNotFoundException("Role not found"));
 
+    public void assignRoleToMember(@Nonnull final Long chatId, @Nonnull final Long memberId, @Nonnull final String roleName) {
+        requireMemberAndRole(chatId, memberId, roleName);
 
-        member.getRoles().add(role);
-        groupMemberRepository.save(member);
+        memberRoleRepository.save(MemberRole.builder()
+                .chatId(chatId)
+                .roleName(roleName)
+                .userId(memberId)
+                .build());
+        roleMembersCache.invalidateRole(chatId, roleName);
     }
 
 
-    public void removeRoleFromMember(@Nonnull final Long memberId, @Nonnull final String roleName) {
-        var member = groupMemberRepository.findById(memberId)
-                .orElseThrow(() -> new EntityNotFoundException("Member not found"));
+    public void removeRoleFromMember(@Nonnull final Long chatId, @Nonnull final Long memberId, @Nonnull final String roleName) {
+        requireMemberAndRole(chatId, memberId, roleName);
+
+        memberRoleRepository.deleteById(new MemberRoleId(chatId, roleName, memberId));
+        roleMembersCache.invalidateRole(chatId, roleName);
+    }
 
-        var role = roleNameRepository.findByName(roleName)
-                .orElseThrow(() -> new EntityNotFoundException("Role not found"));
 
-        member.getRoles().remove(role);
-        groupMemberRepository.save(member);
+    private void requireMemberAndRole(Long chatId, Long memberId, String roleName) {
+        if (!groupMemberRepository.existsByChatIdAndId(chatId, memberId)) {
+            throw new EntityNotFoundException("Member not found");
+        }
+        if (!roleNameRepository.existsByChatIdAndName(chatId, roleName)) {
+            throw new EntityNotFoundException("Role not found");
+        }
     }
-}
\ No newline at end of file
+}
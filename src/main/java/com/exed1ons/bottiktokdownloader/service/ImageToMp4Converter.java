@@ -1,16 +1,19 @@
 package com.exed1ons.bottiktokdownloader.service;
 
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class ImageToMp4Converter {
@@ -18,9 +21,40 @@ public class ImageToMp4Converter {
     private static final Logger logger = LoggerFactory.getLogger(ImageToMp4Converter.class);
 
     private static final String GIF_OUTPUT_DIR = "gif_output";
-    private static final String OUTPUT_FILE = GIF_OUTPUT_DIR + File.separator + "output.mp4";
+    private static final String OUTPUT_FILE_PREFIX = "image_";
+    private static final String OUTPUT_FILE_SUFFIX = ".mp4";
+    private static final long FFMPEG_TIMEOUT_SECONDS = 60;
 
-    public InputFile createMp4FromImage(BufferedImage image) {
+    public static final String CONVERSION_PARAMETERS = "still-mp4:1s";
+
+    private final PipelineMetrics pipelineMetrics;
+
+    public ImageToMp4Converter(PipelineMetrics pipelineMetrics) {
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /**
+     * Pipes the original image bytes into ffmpeg and encodes a one second still-image clip.
+     * Every call writes to its own output file, so concurrent conversions cannot overwrite each other.
+     */
+    public InputFile createMp4FromImage(InputStream imageStream) {
+        Timer.Sample sample = pipelineMetrics.startSubprocess("ffmpeg");
+        InputFile result = null;
+        try {
+            result = convert(imageStream);
+            return result;
+        } finally {
+            pipelineMetrics.stopSubprocess(sample, "ffmpeg", "photo", result != null);
+        }
+    }
+
+    /**
+     * Runs ffmpeg for one image. Whatever happens, ffmpeg is not left running and a failed conversion leaves no output file.
+     */
+    private InputFile convert(InputStream imageStream) {
+        File outputFile = new File(GIF_OUTPUT_DIR, OUTPUT_FILE_PREFIX + UUID.randomUUID() + OUTPUT_FILE_SUFFIX);
+        Process process = null;
+        InputFile result = null;
 
         try {
             File directory = new File(GIF_OUTPUT_DIR);
@@ -33,51 +67,82 @@ public class ImageToMp4Converter {
                 }
             }
 
-            if(new File(OUTPUT_FILE).exists()) {
-                deleteOutputFile();
-            }
-
-            File tempImageFile = File.createTempFile("temp_image", ".png");
-            ImageIO.write(image, "png", tempImageFile);
-
             String[] command = {
                     "ffmpeg", "-y",
-                    "-loop", "1",
-                    "-i", tempImageFile.getAbsolutePath(),
-                    "-vf", "scale=ceil(iw/2)*2:ceil(ih/2)*2",
+                    "-f", "image2pipe",
+                    "-i", "pipe:0",
+                    "-vf", "scale=ceil(iw/2)*2:ceil(ih/2)*2,tpad=stop_mode=clone:stop_duration=1",
                     "-c:v", "libx264",
+                    "-preset", "veryfast",
+                    "-tune", "stillimage",
                     "-t", "1",
                     "-pix_fmt", "yuv420p",
-                    OUTPUT_FILE
+                    "-movflags", "+faststart",
+                    "-an",
+                    outputFile.getPath()
             };
 
-            Process process = new ProcessBuilder(command).inheritIO().start();
-            process.waitFor();
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectErrorStream(true);
+            Process started = processBuilder.start();
+            process = started;
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    logger.info(line);
-                }
+            Thread outputDrainer = new Thread(() -> drainOutput(started), "ffmpeg-output");
+            outputDrainer.setDaemon(true);
+            outputDrainer.start();
+
+            try (OutputStream stdin = process.getOutputStream()) {
+                imageStream.transferTo(stdin);
+            }
+
+            if (!process.waitFor(FFMPEG_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.error("ffmpeg timed out after " + FFMPEG_TIMEOUT_SECONDS + " seconds");
+                return null;
             }
 
-            tempImageFile.delete();
-            return new InputFile(new File(OUTPUT_FILE));
+            int exitCode = process.exitValue();
+            if (exitCode != 0 || !outputFile.exists()) {
+                logger.error("ffmpeg image conversion failed with exit code: " + exitCode);
+                return null;
+            }
+
+            result = new InputFile(outputFile);
+            return result;
 
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted during image to mp4 conversion");
+        } catch (IOException e) {
             logger.error("Error during image to mp4 conversion: " + e.getMessage());
+        } finally {
+            if (process != null && process.isAlive()) {
+                process.destroyForcibly();
+            }
+            if (result == null) {
+                deleteOutputFile(outputFile);
+            }
         }
         return null;
     }
 
-    public void deleteOutputFile() {
-        File file = new File(OUTPUT_FILE);
-        if (file.exists()) {
+    private static void drainOutput(Process process) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logger.debug("ffmpeg: " + line);
+            }
+        } catch (IOException e) {
+            logger.debug("Stopped reading ffmpeg output: " + e.getMessage());
+        }
+    }
+
+    public void deleteOutputFile(File file) {
+        if (file != null && file.exists()) {
             if (file.delete()) {
-                logger.info("File deleted successfully: " + OUTPUT_FILE);
+                logger.info("File deleted successfully: " + file.getPath());
             } else {
-                logger.error("Failed to delete file: " + OUTPUT_FILE);
+                logger.error("Failed to delete file: " + file.getPath());
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -1,22 +1,35 @@
 package com.exed1ons.bottiktokdownloader.service;
 
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.OptionalInt;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class InstagramReelDownloadService {
     private static final Logger logger = LoggerFactory.getLogger(InstagramReelDownloadService.class);
 
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private final PythonWorkerPool pythonWorkerPool;
+    private final PipelineMetrics pipelineMetrics;
+
     @Value("${download.directory.video}")
     private String downloadDirectory;
 
+    public InstagramReelDownloadService(PythonWorkerPool pythonWorkerPool, PipelineMetrics pipelineMetrics) {
+        this.pythonWorkerPool = pythonWorkerPool;
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
     public String downloadReel(String reelUrl) {
         try {
             File directory = new File(downloadDirectory);
@@ -38,22 +51,19 @@ public class InstagramReelDownloadService {
                 return null;
             }
 
-            List<String> command = new ArrayList<>();
-            command.add("python3");
-            command.add("-m");
-            command.add("instaloader");
-            command.add("--dirname-pattern");
-            command.add(downloadDirectory);
-            command.add("--filename-pattern");
-            command.add("{shortcode}");
-            command.add("--no-metadata-json");
-            command.add("--no-compress-json");
-            command.add("--no-profile-pic");
-            command.add("--no-captions");
-            command.add("--");
-            command.add("-" + shortcode);
-
-            if (executeCommand(command, shortcode)) {
+            List<String> args = new ArrayList<>();
+            args.add("--dirname-pattern");
+            args.add(downloadDirectory);
+            args.add("--filename-pattern");
+            args.add("{shortcode}");
+            args.add("--no-metadata-json");
+            args.add("--no-compress-json");
+            args.add("--no-profile-pic");
+            args.add("--no-captions");
+            args.add("--");
+            args.add("-" + shortcode);
+
+            if (runInstaloader(args)) {
                 String downloadedPath = downloadDirectory + File.separator + shortcode + ".mp4";
                 File downloadedFile = new File(downloadedPath);
 
@@ -83,7 +93,7 @@ public class InstagramReelDownloadService {
         }
     }
 
-    private String extractShortcode(String url) {
+    public String extractShortcode(String url) {
         String pattern = "/reel/([A-Za-z0-9_-]+)";
         java.util.regex.Pattern r = java.util.regex.Pattern.compile(pattern);
         java.util.regex.Matcher m = r.matcher(url);
@@ -94,7 +104,37 @@ public class InstagramReelDownloadService {
         return null;
     }
 
-    private boolean executeCommand(List<String> command, String shortcode) {
+    private boolean runInstaloader(List<String> args) {
+        Timer.Sample sample = pipelineMetrics.startSubprocess("instaloader");
+        boolean success = false;
+        try {
+            success = executeInstaloader(args);
+            return success;
+        } finally {
+            pipelineMetrics.stopSubprocess(sample, "instaloader", "instagram", success);
+        }
+    }
+
+    private boolean executeInstaloader(List<String> args) {
+        OptionalInt exitCode = pythonWorkerPool.run("instaloader", args, null, Duration.ofSeconds(TIMEOUT_SECONDS));
+        if (exitCode.isPresent()) {
+            if (exitCode.getAsInt() == 0) {
+                logger.info("Instaloader completed successfully");
+                return true;
+            }
+            logger.error("Instaloader failed with exit code: " + exitCode.getAsInt());
+            return false;
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add("python3");
+        command.add("-m");
+        command.add("instaloader");
+        command.addAll(args);
+        return executeCommand(command);
+    }
+
+    private boolean executeCommand(List<String> command) {
         try {
             ProcessBuilder processBuilder = new ProcessBuilder(command);
             processBuilder.redirectErrorStream(true);
@@ -112,11 +152,11 @@ public class InstagramReelDownloadService {
                 }
             }
 
-            boolean finished = process.waitFor(120, TimeUnit.SECONDS);
+            boolean finished = process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
             if (!finished) {
                 process.destroyForcibly();
-                logger.error("Process timed out after 120 seconds");
+                logger.error("Process timed out after " + TIMEOUT_SECONDS + " seconds");
                 return false;
             }
 
@@ -0,0 +1,180 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds supported links in message text or captions.
+ * URL candidates are taken from Telegram's url/text_link entities when the message has them, otherwise
+ * the text is scanned once. Each candidate is then classified by host and path, without running a regex per link type.
+ */
+@Service
+public class LinkClassifier {
+
+    private static final Pattern URL_PATTERN = Pattern.compile("https?://[^\\s<>\"]+", Pattern.CASE_INSENSITIVE);
+    private static final int MAX_LINKS_PER_MESSAGE = 5;
+
+    public List<MediaLink> classify(String text, List<MessageEntity> entities) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+
+        Set<MediaLink> links = new LinkedHashSet<>();
+        for (String candidate : extractCandidates(text, entities)) {
+            classifyUrl(candidate).ifPresent(links::add);
+            if (links.size() == MAX_LINKS_PER_MESSAGE) {
+                break;
+            }
+        }
+        return new ArrayList<>(links);
+    }
+
+    private static List<String> extractCandidates(String text, List<MessageEntity> entities) {
+        List<String> candidates = new ArrayList<>();
+        if (entities != null && !entities.isEmpty()) {
+            for (MessageEntity entity : entities) {
+                if ("url".equals(entity.getType())) {
+                    int start = entity.getOffset();
+                    int end = start + entity.getLength();
+                    if (start >= 0 && end <= text.length()) {
+                        candidates.add(text.substring(start, end));
+                    }
+                } else if ("text_link".equals(entity.getType()) && entity.getUrl() != null) {
+                    candidates.add(entity.getUrl());
+                }
+            }
+            return candidates;
+        }
+
+        if (text.indexOf("://") < 0) {
+            return candidates;
+        }
+        Matcher matcher = URL_PATTERN.matcher(text);
+        while (matcher.find()) {
+            candidates.add(matcher.group());
+        }
+        return candidates;
+    }
+
+    public Optional<MediaLink> classifyUrl(String url) {
+        int schemeEnd = url.indexOf("://");
+        int hostStart = schemeEnd >= 0 ? schemeEnd + 3 : 0;
+        int hostEnd = indexOfAny(url, hostStart, "/?#");
+        String host = url.substring(hostStart, hostEnd).toLowerCase(Locale.ROOT);
+        if (host.startsWith("www.")) {
+            host = host.substring(4);
+        } else if (host.startsWith("m.")) {
+            host = host.substring(2);
+        }
+
+        int pathEnd = indexOfAny(url, hostEnd, "?#");
+        String[] segments = splitPath(url.substring(hostEnd, pathEnd));
+
+        switch (host) {
+            case "vm.tiktok.com":
+            case "vt.tiktok.com":
+                if (segments.length >= 1 && isAlphanumeric(segments[0])) {
+                    return Optional.of(new MediaLink(MediaLink.Type.TIKTOK_SHORT, "https://" + host + "/" + segments[0], segments[0]));
+                }
+                return Optional.empty();
+            case "tiktok.com":
+                return classifyTikTok(segments);
+            case "instagram.com":
+                if (segments.length >= 2 && (segments[0].equals("reel") || segments[0].equals("reels")) && isShortcode(segments[1])) {
+                    return Optional.of(new MediaLink(MediaLink.Type.INSTAGRAM_REEL, "https://www.instagram.com/reel/" + segments[1], segments[1]));
+                }
+                return Optional.empty();
+            case "open.spotify.com":
+                return classifySpotify(segments);
+            default:
+                return Optional.empty();
+        }
+    }
+
+    private static Optional<MediaLink> classifyTikTok(String[] segments) {
+        if (segments.length >= 2 && segments[0].equals("t") && isAlphanumeric(segments[1])) {
+            return Optional.of(new MediaLink(MediaLink.Type.TIKTOK_SHORT, "https://www.tiktok.com/t/" + segments[1], segments[1]));
+        }
+        if (segments.length >= 3 && segments[0].startsWith("@") && segments[0].length() > 1 && isNumeric(segments[2])) {
+            String prefix = "https://www.tiktok.com/" + segments[0] + "/";
+            if (segments[1].equals("video")) {
+                return Optional.of(new MediaLink(MediaLink.Type.TIKTOK_VIDEO, prefix + "video/" + segments[2], segments[2]));
+            }
+            if (segments[1].equals("photo")) {
+                return Optional.of(new MediaLink(MediaLink.Type.TIKTOK_PHOTO, prefix + "photo/" + segments[2], segments[2]));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<MediaLink> classifySpotify(String[] segments) {
+        int index = segments.length >= 1 && segments[0].startsWith("intl-") ? 1 : 0;
+        if (segments.length >= index + 2 && segments[index].equals("track") && isAlphanumeric(segments[index + 1])) {
+            String trackId = segments[index + 1];
+            return Optional.of(new MediaLink(MediaLink.Type.SPOTIFY_TRACK, "https://open.spotify.com/track/" + trackId, trackId));
+        }
+        return Optional.empty();
+    }
+
+    private static int indexOfAny(String value, int from, String characters) {
+        for (int i = from; i < value.length(); i++) {
+            if (characters.indexOf(value.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return value.length();
+    }
+
+    private static String[] splitPath(String path) {
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+    }
+
+    private static boolean isAlphanumeric(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isShortcode(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumeric(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,389 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Keeps downloaded media on disk so a re-send that cannot use a Telegram file_id does not download again.
+ * Files are stored once per content hash under {@code objects/}, and {@code index/} maps canonical keys
+ * such as {@code tiktok:video:<id>} to them. Files are moved in under a {@code .part} name and renamed
+ * when complete, so a partial file is never served. Entries past the TTL or beyond the byte budget are
+ * evicted least recently used first, skipping files that are currently being sent.
+ */
+@Service
+public class MediaDiskCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaDiskCache.class);
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String REF_SUFFIX = ".ref";
+
+    private final Path objectsDirectory;
+    private final Path indexDirectory;
+    private final long maxBytes;
+    private final Duration ttl;
+
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> objectReferences = new HashMap<>();
+    private final Map<String, Integer> pins = new HashMap<>();
+    private long totalBytes;
+
+    public MediaDiskCache(@Value("${download.directory.cache:downloads/cache}") String cacheDirectory,
+                          @Value("${media.cache.max-bytes:2147483648}") long maxBytes,
+                          @Value("${media.cache.ttl:7d}") Duration ttl) {
+        this.objectsDirectory = Path.of(cacheDirectory, "objects").toAbsolutePath().normalize();
+        this.indexDirectory = Path.of(cacheDirectory, "index").toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+    }
+
+    @PostConstruct
+    public synchronized void loadIndex() {
+        try {
+            Files.createDirectories(objectsDirectory);
+            Files.createDirectories(indexDirectory);
+        } catch (IOException e) {
+            logger.error("Failed to create media cache directories: " + e.getMessage());
+            return;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> refs = Files.newDirectoryStream(indexDirectory, "*" + REF_SUFFIX)) {
+            for (Path ref : refs) {
+                Entry entry = readRef(ref);
+                if (entry != null && Files.isRegularFile(objectsDirectory.resolve(entry.object))) {
+                    entries.add(entry);
+                } else {
+                    Files.deleteIfExists(ref);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read media cache index: " + e.getMessage());
+        }
+
+        entries.sort(Comparator.comparingLong(entry -> entry.lastAccess));
+        for (Entry entry : entries) {
+            addEntry(entry);
+        }
+        deleteUnreferencedObjects();
+        evict();
+        logger.info("Media cache loaded " + index.size() + " entries, " + totalBytes + " bytes");
+    }
+
+    /**
+     * Returns the cached file for {@code key} or downloads it with {@code loader} and stores it.
+     * The returned file is pinned until {@link #release} is called for the same key.
+     */
+    public File getOrLoad(String key, Supplier<File> loader) {
+        File cached = get(key);
+        if (cached != null) {
+            logger.info("Serving " + key + " from the media cache");
+            return cached;
+        }
+
+        File downloaded = loader.get();
+        if (downloaded == null || !downloaded.isFile()) {
+            return null;
+        }
+        File stored = store(key, downloaded);
+        return stored != null ? stored : downloaded;
+    }
+
+    public synchronized File get(String key) {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        Path object = objectsDirectory.resolve(entry.object);
+        if (isExpired(entry) || !Files.isRegularFile(object)) {
+            if (!pins.containsKey(key)) {
+                removeEntry(key);
+            }
+            return null;
+        }
+
+        entry.lastAccess = System.currentTimeMillis();
+        writeRef(entry);
+        pin(key);
+        return object.toFile();
+    }
+
+    /**
+     * Moves {@code source} into the cache under {@code key} and returns the cached file, or null if it could
+     * not be stored, in which case {@code source} is left where it was. The file is hashed and moved next to
+     * its object outside the lock; whether an existing object is adopted is decided under the lock, so an
+     * eviction cannot delete that object between the check and the new entry being pinned.
+     */
+    public File store(String key, File source) {
+        String object;
+        Path part;
+        try {
+            String extension = extensionOf(source.getName());
+            String hash = sha256(source.toPath());
+            object = hash.substring(0, 2) + "/" + hash + extension;
+
+            Path target = objectsDirectory.resolve(object);
+            Files.createDirectories(target.getParent());
+            part = target.resolveSibling(hash + "-" + UUID.randomUUID() + PART_SUFFIX);
+            Files.move(source.toPath(), part, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.error("Failed to store " + source.getPath() + " in the media cache: " + e.getMessage());
+            return null;
+        }
+
+        synchronized (this) {
+            Path target = objectsDirectory.resolve(object);
+            boolean adopted = Files.exists(target);
+            if (!adopted) {
+                try {
+                    moveAtomically(part, target);
+                } catch (IOException e) {
+                    logger.error("Failed to store " + source.getPath() + " in the media cache: " + e.getMessage());
+                    restore(part, source.toPath());
+                    return null;
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            Entry previous = index.get(key);
+            Entry entry = new Entry(key, object, target.toFile().length(), now, now);
+            addEntry(entry);
+            if (previous != null) {
+                releaseObject(previous);
+            }
+            writeRef(entry);
+            pin(key);
+            if (adopted) {
+                deleteQuietly(part);
+            }
+            evict();
+            logger.info("Stored " + key + " in the media cache (" + totalBytes + "/" + maxBytes + " bytes)");
+            return target.toFile();
+        }
+    }
+
+    /**
+     * Unpins the file handed out for {@code key}. Files that never made it into the cache are deleted.
+     */
+    public synchronized void release(String key, File file) {
+        pins.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+
+        if (file != null && !file.getAbsoluteFile().toPath().normalize().startsWith(objectsDirectory)) {
+            if (file.exists() && !file.delete()) {
+                logger.error("Failed to delete file: " + file.getPath());
+            }
+        }
+        evict();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private void pin(String key) {
+        pins.merge(key, 1, Integer::sum);
+    }
+
+    private boolean isExpired(Entry entry) {
+        return !ttl.isZero() && System.currentTimeMillis() - entry.createdAt > ttl.toMillis();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = index.entrySet().iterator();
+        List<String> evicted = new ArrayList<>();
+        Map<String, Integer> remainingReferences = new HashMap<>(objectReferences);
+        long remainingBytes = totalBytes;
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (pins.containsKey(entry.key)) {
+                continue;
+            }
+            if (isExpired(entry) || remainingBytes > maxBytes) {
+                evicted.add(entry.key);
+                if (remainingReferences.merge(entry.object, -1, Integer::sum) == 0) {
+                    remainingBytes -= entry.size;
+                }
+            }
+        }
+        for (String key : evicted) {
+            removeEntry(key);
+            logger.info("Evicted " + key + " from the media cache");
+        }
+    }
+
+    private void addEntry(Entry entry) {
+        index.put(entry.key, entry);
+        if (objectReferences.merge(entry.object, 1, Integer::sum) == 1) {
+            totalBytes += entry.size;
+        }
+    }
+
+    private void removeEntry(String key) {
+        Entry entry = index.remove(key);
+        if (entry == null) {
+            return;
+        }
+        deleteQuietly(refPath(key));
+        releaseObject(entry);
+    }
+
+    private void releaseObject(Entry entry) {
+        Integer references = objectReferences.computeIfPresent(entry.object, (k, count) -> count > 1 ? count - 1 : null);
+        if (references == null) {
+            totalBytes -= entry.size;
+            deleteQuietly(objectsDirectory.resolve(entry.object));
+        }
+    }
+
+    private void deleteUnreferencedObjects() {
+        try (Stream<Path> files = Files.walk(objectsDirectory)) {
+            files.filter(Files::isRegularFile)
+                    .filter(path -> !objectReferences.containsKey(objectsDirectory.relativize(path).toString().replace(File.separatorChar, '/')))
+                    .forEach(MediaDiskCache::deleteQuietly);
+        } catch (IOException e) {
+            logger.warn("Failed to clean up media cache objects: " + e.getMessage());
+        }
+    }
+
+    private Path refPath(String key) {
+        return indexDirectory.resolve(sha256(key.getBytes(StandardCharsets.UTF_8)) + REF_SUFFIX);
+    }
+
+    private void writeRef(Entry entry) {
+        Properties properties = new Properties();
+        properties.setProperty("key", entry.key);
+        properties.setProperty("object", entry.object);
+        properties.setProperty("size", Long.toString(entry.size));
+        properties.setProperty("createdAt", Long.toString(entry.createdAt));
+        properties.setProperty("lastAccess", Long.toString(entry.lastAccess));
+
+        Path ref = refPath(entry.key);
+        Path part = ref.resolveSibling(ref.getFileName() + "-" + UUID.randomUUID() + PART_SUFFIX);
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(part)) {
+                properties.store(outputStream, null);
+            }
+            moveAtomically(part, ref);
+        } catch (IOException e) {
+            logger.warn("Failed to write media cache index entry for " + entry.key + ": " + e.getMessage());
+            deleteQuietly(part);
+        }
+    }
+
+    private static Entry readRef(Path ref) {
+        Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(ref)) {
+            properties.load(inputStream);
+            if (properties.getProperty("key") == null || properties.getProperty("object") == null) {
+                return null;
+            }
+            return new Entry(properties.getProperty("key"), properties.getProperty("object"),
+                    Long.parseLong(properties.getProperty("size")),
+                    Long.parseLong(properties.getProperty("createdAt")),
+                    Long.parseLong(properties.getProperty("lastAccess")));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable media cache index entry " + ref + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void restore(Path part, Path source) {
+        try {
+            Files.move(part, source, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to move " + part + " back to " + source + ": " + e.getMessage());
+            deleteQuietly(part);
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(dot).toLowerCase() : "";
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            byte[] buffer = new byte[65536];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final String object;
+        private final long size;
+        private final long createdAt;
+        private long lastAccess;
+
+        private Entry(String key, String object, long size, long createdAt, long lastAccess) {
+            this.key = key;
+            this.object = object;
+            this.size = size;
+            this.createdAt = createdAt;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent downloads of the same media. The first caller for a key runs the download,
+ * every caller that arrives while the file is in use shares its result. The file is reference-counted
+ * and handed to the cleanup callback only after the last lease has been released.
+ */
+@Service
+public class MediaDownloadRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaDownloadRegistry.class);
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    public MediaLease acquire(String key, Supplier<File> loader, Consumer<File> cleanup) {
+        Flight[] created = new Flight[1];
+        Flight flight = flights.compute(key, (k, existing) -> {
+            if (existing != null) {
+                existing.references++;
+                return existing;
+            }
+            created[0] = new Flight(cleanup);
+            return created[0];
+        });
+
+        if (flight == created[0]) {
+            load(key, flight, loader);
+        } else {
+            logger.info("Joining in-flight download for " + key);
+        }
+
+        File file = flight.result.join();
+        MediaLease lease = new MediaLease(this, key, flight, file);
+        if (file == null) {
+            lease.close();
+            return null;
+        }
+        return lease;
+    }
+
+    /**
+     * Runs the loader and always settles the flight, even when the loader throws an {@link Error},
+     * so callers waiting on the same key never block. The error itself still reaches the first caller.
+     */
+    private void load(String key, Flight flight, Supplier<File> loader) {
+        File file = null;
+        try {
+            file = loader.get();
+        } catch (RuntimeException e) {
+            logger.error("Download failed for " + key, e);
+        } finally {
+            if (file == null || !file.exists()) {
+                flights.remove(key, flight);
+                flight.result.complete(null);
+            } else {
+                flight.result.complete(file);
+            }
+        }
+    }
+
+    void release(MediaLease lease) {
+        flights.compute(lease.getKey(), (k, existing) -> {
+            if (existing != lease.getFlight()) {
+                return existing;
+            }
+            existing.references--;
+            if (existing.references > 0) {
+                return existing;
+            }
+            File file = existing.result.getNow(null);
+            if (file != null) {
+                existing.cleanup.accept(file);
+            }
+            return null;
+        });
+    }
+
+    static final class Flight {
+        private final CompletableFuture<File> result = new CompletableFuture<>();
+        private final Consumer<File> cleanup;
+        private int references = 1;
+
+        private Flight(Consumer<File> cleanup) {
+            this.cleanup = cleanup;
+        }
+    }
+}
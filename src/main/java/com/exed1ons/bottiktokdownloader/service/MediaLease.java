@@ -0,0 +1,56 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A reference to a downloaded file shared through {@link MediaDownloadRegistry}.
+ * The file stays on disk until every lease for it has been closed.
+ */
+public class MediaLease implements AutoCloseable {
+
+    private final MediaDownloadRegistry registry;
+    private final String key;
+    private final MediaDownloadRegistry.Flight flight;
+    private final File file;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    MediaLease(MediaDownloadRegistry registry, String key, MediaDownloadRegistry.Flight flight, File file) {
+        this.registry = registry;
+        this.key = key;
+        this.flight = flight;
+        this.file = file;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * File name to upload under: the media id from the key plus the file's extension, since cached files are
+     * named after their content hash. Keys that are plain URLs fall back to the file's own name.
+     */
+    public String getUploadName() {
+        String name = file.getName();
+        if (key.contains("/")) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        return key.substring(key.lastIndexOf(':') + 1) + (dot > 0 ? name.substring(dot) : "");
+    }
+
+    MediaDownloadRegistry.Flight getFlight() {
+        return flight;
+    }
+
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            registry.release(this);
+        }
+    }
+}
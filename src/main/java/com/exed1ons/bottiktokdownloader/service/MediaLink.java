@@ -0,0 +1,16 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+/**
+ * A supported link found in a message, normalized to its canonical form.
+ * {@code id} is the TikTok video/post id, the reel shortcode, the Spotify track id or the short-link code.
+ */
+public record MediaLink(Type type, String url, String id) {
+
+    public enum Type {
+        TIKTOK_VIDEO,
+        TIKTOK_PHOTO,
+        TIKTOK_SHORT,
+        INSTAGRAM_REEL,
+        SPOTIFY_TRACK
+    }
+}
@@ -1,7 +1,9 @@
 package com.exed1ons.bottiktokdownloader.service;
 
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 
@@ -9,6 +11,7 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class Mp4ToGifConverter {
@@ -19,8 +22,29 @@ public class Mp4ToGifConverter {
     private static final String TEMP_DIR = "temp";
     private static final String OUTPUT_FILE_PREFIX = "output_";
     private static final String OUTPUT_FILE_SUFFIX = ".gif";
+    private static final String ANIMATION_FILE_PREFIX = "animation_";
+    private static final String ANIMATION_FILE_SUFFIX = ".mp4";
+    private static final long MIN_ANIMATION_KBPS = 100;
+    private static final int MAX_ANIMATION_ATTEMPTS = 3;
+    private static final long PROBE_TIMEOUT_SECONDS = 10;
+    private static final long FFMPEG_TIMEOUT_SECONDS = 120;
+
+    public enum AnimationFormat {
+        MP4,
+        GIF
+    }
+
+    private final long maxAnimationBytes;
+    private final double maxAnimationSeconds;
+    private final PipelineMetrics pipelineMetrics;
+
+    public Mp4ToGifConverter(@Value("${gif.animation.max-bytes:4194304}") long maxAnimationBytes,
+                             @Value("${gif.animation.max-seconds:30}") double maxAnimationSeconds,
+                             PipelineMetrics pipelineMetrics) {
+        this.maxAnimationBytes = maxAnimationBytes;
+        this.maxAnimationSeconds = maxAnimationSeconds;
+        this.pipelineMetrics = pipelineMetrics;
 
-    public Mp4ToGifConverter() {
         File outputDir = new File(GIF_OUTPUT_DIR);
         if (!outputDir.exists()) {
             if (outputDir.mkdirs()) {
@@ -40,7 +64,25 @@ public class Mp4ToGifConverter {
         }
     }
 
-    public InputFile convertMp4ToGif(InputFile mp4File) {
+    /**
+     * Describes everything that influences the output for {@code format}, for use in conversion cache keys.
+     */
+    public String describeParameters(AnimationFormat format) {
+        return format == AnimationFormat.GIF
+                ? "gif:fps30:w380"
+                : "mp4:" + maxAnimationBytes + ":" + maxAnimationSeconds;
+    }
+
+    public InputFile convertToAnimation(InputFile videoFile, AnimationFormat format) {
+        return format == AnimationFormat.GIF ? convertMp4ToGif(videoFile) : convertMp4ToAnimation(videoFile);
+    }
+
+    /**
+     * Encodes a muted H.264 clip for SendAnimation. Frame rate, width and bitrate are derived from the
+     * source duration so the result stays within {@code gif.animation.max-bytes}; a clip that still comes out
+     * larger is re-encoded at a proportionally lower bitrate, and dropped if it cannot be brought under budget.
+     */
+    public InputFile convertMp4ToAnimation(InputFile mp4File) {
         if (mp4File == null) {
             logger.error("Invalid InputFile provided for conversion.");
             return null;
@@ -52,62 +94,209 @@ public class Mp4ToGifConverter {
             return null;
         }
 
-        String uniqueId = UUID.randomUUID().toString();
-        String outputFileName = OUTPUT_FILE_PREFIX + uniqueId + OUTPUT_FILE_SUFFIX;
-        File outputFile = new File(GIF_OUTPUT_DIR, outputFileName);
+        double duration = Math.min(probeDuration(inputFile), maxAnimationSeconds);
+        int fps = duration <= 10 ? 30 : duration <= 20 ? 24 : 15;
+        long bitrateKbps = Math.max(MIN_ANIMATION_KBPS, (long) (maxAnimationBytes * 8 * 0.9 / duration / 1000));
+
+        File outputFile = new File(GIF_OUTPUT_DIR, ANIMATION_FILE_PREFIX + UUID.randomUUID() + ANIMATION_FILE_SUFFIX);
+
+        for (int attempt = 1; attempt <= MAX_ANIMATION_ATTEMPTS; attempt++) {
+            if (!encodeAnimation(inputFile, outputFile, duration, fps, bitrateKbps) || !outputFile.exists()) {
+                logger.error("ffmpeg did not create the output animation file.");
+                deleteFile(outputFile);
+                return null;
+            }
+
+            long size = outputFile.length();
+            if (size <= maxAnimationBytes) {
+                logger.info("MP4 to animation conversion successful: " + outputFile.getAbsolutePath() + " (Size: " + size + " bytes)");
+                return new InputFile(outputFile);
+            }
+            if (bitrateKbps == MIN_ANIMATION_KBPS) {
+                break;
+            }
+
+            logger.warn("Animation is " + size + " bytes, over the " + maxAnimationBytes + " byte budget at " + bitrateKbps + " kbps");
+            bitrateKbps = Math.max(MIN_ANIMATION_KBPS, (long) (bitrateKbps * 0.9 * maxAnimationBytes / size));
+        }
+
+        logger.error("Could not encode " + inputFile.getAbsolutePath() + " within " + maxAnimationBytes + " bytes");
+        deleteFile(outputFile);
+        return null;
+    }
+
+    private boolean encodeAnimation(File inputFile, File outputFile, double duration, int fps, long bitrateKbps) {
+        int maxWidth = bitrateKbps >= 1500 ? 720 : bitrateKbps >= 700 ? 480 : 320;
 
         String[] command = {
                 "ffmpeg",
                 "-y",
                 "-i", inputFile.getAbsolutePath(),
-                "-vf", "fps=30,scale=380:-1:flags=lanczos",
-                "-gifflags", "+transdiff",
-                "-pix_fmt", "rgba",
-                "-f", "gif",
+                "-t", String.valueOf(duration),
+                "-an",
+                "-vf", "fps=" + fps + ",scale='min(" + maxWidth + ",iw)':-2:flags=lanczos",
+                "-c:v", "libx264",
+                "-preset", "veryfast",
+                "-pix_fmt", "yuv420p",
+                "-b:v", bitrateKbps + "k",
+                "-maxrate", bitrateKbps + "k",
+                "-bufsize", (bitrateKbps * 2) + "k",
+                "-movflags", "+faststart",
                 outputFile.getAbsolutePath()
         };
 
-        logger.info("Starting MP4 to GIF conversion: " + inputFile.getAbsolutePath() + " -> " + outputFile.getAbsolutePath());
+        logger.info("Starting MP4 to animation conversion: " + inputFile.getAbsolutePath() + " -> " + outputFile.getAbsolutePath()
+                + " (" + fps + " fps, width " + maxWidth + ", " + bitrateKbps + " kbps)");
+        return runFfmpeg(command, outputFile);
+    }
 
+    /**
+     * Reads the source duration with ffprobe, giving up after {@value #PROBE_TIMEOUT_SECONDS} seconds.
+     * Falls back to {@code gif.animation.max-seconds} when the duration is unknown.
+     */
+    private double probeDuration(File inputFile) {
+        String[] command = {
+                "ffprobe",
+                "-v", "error",
+                "-show_entries", "format=duration",
+                "-of", "default=noprint_wrappers=1:nokey=1",
+                inputFile.getAbsolutePath()
+        };
+
+        Process process = null;
+        try {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            if (!process.waitFor(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("ffprobe did not finish within " + PROBE_TIMEOUT_SECONDS + " seconds for " + inputFile.getAbsolutePath());
+                return maxAnimationSeconds;
+            }
+            String output;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                output = reader.readLine();
+            }
+            if (output != null) {
+                double duration = Double.parseDouble(output.trim());
+                if (duration > 0) {
+                    return duration;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while probing video duration");
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Failed to probe video duration: " + e.getMessage());
+        } finally {
+            if (process != null && process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+        return maxAnimationSeconds;
+    }
+
+    /**
+     * Runs ffmpeg for at most {@value #FFMPEG_TIMEOUT_SECONDS} seconds. Whenever it fails, times out or is interrupted
+     * the process is killed and the partial {@code outputFile} is deleted.
+     */
+    private boolean runFfmpeg(String[] command, File outputFile) {
+        Timer.Sample sample = pipelineMetrics.startSubprocess("ffmpeg");
+        Process process = null;
+        boolean success = false;
         try {
             ProcessBuilder processBuilder = new ProcessBuilder(command);
             processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
+            Process started = processBuilder.start();
+            process = started;
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    logger.debug("ffmpeg: " + line);
-                }
+            Thread outputDrainer = new Thread(() -> drainOutput(started), "ffmpeg-output");
+            outputDrainer.setDaemon(true);
+            outputDrainer.start();
+
+            if (!process.waitFor(FFMPEG_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.error("ffmpeg timed out after " + FFMPEG_TIMEOUT_SECONDS + " seconds");
+                return false;
             }
 
-            int exitCode = process.waitFor();
+            int exitCode = process.exitValue();
             if (exitCode != 0) {
                 logger.error("ffmpeg conversion failed with exit code: " + exitCode);
-                return null;
+                return false;
+            }
+            success = true;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted during ffmpeg conversion");
+            return false;
+        } catch (IOException e) {
+            logger.error("Error during ffmpeg conversion: ", e);
+            return false;
+        } finally {
+            if (process != null && process.isAlive()) {
+                process.destroyForcibly();
             }
+            if (!success) {
+                deleteFile(outputFile);
+            }
+            pipelineMetrics.stopSubprocess(sample, "ffmpeg", "video", success);
+        }
+    }
 
-            if (!outputFile.exists()) {
-                logger.error("ffmpeg did not create the output GIF file.");
-                return null;
+    private static void drainOutput(Process process) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logger.debug("ffmpeg: " + line);
             }
+        } catch (IOException e) {
+            logger.debug("Stopped reading ffmpeg output: " + e.getMessage());
+        }
+    }
 
-            logger.info("MP4 to GIF conversion successful: " + outputFile.getAbsolutePath());
+    public InputFile convertMp4ToGif(InputFile mp4File) {
+        if (mp4File == null) {
+            logger.error("Invalid InputFile provided for conversion.");
+            return null;
+        }
 
-            return new InputFile(outputFile);
+        File inputFile = mp4File.getNewMediaFile();
+        if (!inputFile.exists() || !inputFile.isFile()) {
+            logger.error("Input MP4 file does not exist or is not a valid file: " + inputFile.getAbsolutePath());
+            return null;
+        }
+
+        String uniqueId = UUID.randomUUID().toString();
+        String outputFileName = OUTPUT_FILE_PREFIX + uniqueId + OUTPUT_FILE_SUFFIX;
+        File outputFile = new File(GIF_OUTPUT_DIR, outputFileName);
+
+        String[] command = {
+                "ffmpeg",
+                "-y",
+                "-i", inputFile.getAbsolutePath(),
+                "-vf", "fps=30,scale=380:-1:flags=lanczos",
+                "-gifflags", "+transdiff",
+                "-pix_fmt", "rgba",
+                "-f", "gif",
+                outputFile.getAbsolutePath()
+        };
+
+        logger.info("Starting MP4 to GIF conversion: " + inputFile.getAbsolutePath() + " -> " + outputFile.getAbsolutePath());
 
-        } catch (IOException | InterruptedException e) {
-            logger.error("Error during MP4 to GIF conversion: ", e);
+        if (!runFfmpeg(command, outputFile) || !outputFile.exists()) {
+            logger.error("ffmpeg did not create the output GIF file.");
             return null;
         }
+
+        logger.info("MP4 to GIF conversion successful: " + outputFile.getAbsolutePath());
+
+        return new InputFile(outputFile);
     }
 
-    public void deleteGifFile(File gifFile) {
-        if (gifFile != null && gifFile.exists()) {
-            if (gifFile.delete()) {
-                logger.info("Deleted GIF file: " + gifFile.getAbsolutePath());
+    public void deleteFile(File file) {
+        if (file != null && file.exists()) {
+            if (file.delete()) {
+                logger.info("Deleted file: " + file.getAbsolutePath());
             } else {
-                logger.error("Failed to delete GIF file: " + gifFile.getAbsolutePath());
+                logger.error("Failed to delete file: " + file.getAbsolutePath());
             }
         }
     }
@@ -117,7 +306,7 @@ public class Mp4ToGifConverter {
         File[] files = dir.listFiles((d, name) -> name.startsWith(OUTPUT_FILE_PREFIX) && name.endsWith(OUTPUT_FILE_SUFFIX));
         if (files != null) {
             for (File file : files) {
-                deleteGifFile(file);
+                deleteFile(file);
             }
         }
     }
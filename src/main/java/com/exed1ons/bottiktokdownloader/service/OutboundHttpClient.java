@@ -0,0 +1,188 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared client for every outbound call to TikTok, the download providers and the Telegram file API.
+ * Connections are kept alive and pooled per host (HTTP/2 is negotiated where the host supports it),
+ * cookies are kept between calls so provider sessions survive, and gzip/deflate bodies are decoded
+ * while they are streamed. The request timeout only covers the wait for response headers; the body
+ * then has {@code http.body-timeout} to arrive in full.
+ */
+@Component
+public class OutboundHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundHttpClient.class);
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final HttpClient nonRedirectingClient;
+    private final Duration defaultTimeout;
+    private final Duration bodyTimeout;
+    private final Map<String, Duration> hostTimeouts = new HashMap<>();
+
+    public OutboundHttpClient(@Value("${http.connect-timeout:5s}") Duration connectTimeout,
+                              @Value("${http.request-timeout:30s}") Duration defaultTimeout,
+                              @Value("${http.host-timeouts:}") String hostTimeouts,
+                              @Value("${http.body-timeout:120s}") Duration bodyTimeout) {
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "outbound-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CookieManager cookieManager = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .cookieHandler(cookieManager)
+                .executor(executor)
+                .build();
+        this.nonRedirectingClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(connectTimeout)
+                .cookieHandler(cookieManager)
+                .executor(executor)
+                .build();
+        this.defaultTimeout = defaultTimeout;
+        this.bodyTimeout = bodyTimeout;
+
+        for (String entry : hostTimeouts.split(",")) {
+            String[] parts = entry.trim().split("=", 2);
+            if (parts.length == 2) {
+                this.hostTimeouts.put(parts[0].trim().toLowerCase(Locale.ROOT), DurationStyle.detectAndParse(parts[1].trim()));
+            }
+        }
+    }
+
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        return send(client, newRequest(url, headers).GET().build());
+    }
+
+    /**
+     * Sends a GET that returns 3xx responses as they are. Closing the response without reading the body
+     * abandons it, so the page behind a redirect chain is never downloaded.
+     */
+    public Response getWithoutRedirects(String url, Map<String, String> headers) throws IOException {
+        return send(nonRedirectingClient, newRequest(url, headers).GET().build());
+    }
+
+    public Response postForm(String url, String formData, Map<String, String> headers) throws IOException {
+        HttpRequest.Builder builder = newRequest(url, headers)
+                .POST(HttpRequest.BodyPublishers.ofString(formData, StandardCharsets.UTF_8));
+        if (headers.keySet().stream().noneMatch(name -> name.equalsIgnoreCase("Content-Type"))) {
+            builder.header("Content-Type", "application/x-www-form-urlencoded");
+        }
+        return send(client, builder.build());
+    }
+
+    private HttpRequest.Builder newRequest(String url, Map<String, String> headers) {
+        URI uri = URI.create(url);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(timeoutFor(uri))
+                .header("Accept-Encoding", ACCEPT_ENCODING);
+
+        headers.forEach((name, value) -> {
+            String lowerName = name.toLowerCase(Locale.ROOT);
+            if (!RESTRICTED_HEADERS.contains(lowerName) && !lowerName.equals("accept-encoding")) {
+                builder.header(name, value);
+            }
+        });
+        return builder;
+    }
+
+    private Duration timeoutFor(URI uri) {
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        return hostTimeouts.getOrDefault(host, defaultTimeout);
+    }
+
+    private Response send(HttpClient httpClient, HttpRequest request) throws IOException {
+        try {
+            HttpResponse<Flow.Publisher<List<ByteBuffer>>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofPublisher());
+            DeadlineBodyStream body = new DeadlineBodyStream(request.uri(), bodyTimeout);
+            response.body().subscribe(body);
+            boolean hasBody = response.statusCode() / 100 != 3 && response.statusCode() != 204;
+            String encoding = hasBody
+                    ? response.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT)
+                    : "";
+            try {
+                return new Response(response.statusCode(), response.uri(), response.headers(), decode(body, encoding));
+            } catch (IOException e) {
+                body.close();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling " + request.uri(), e);
+        }
+    }
+
+    private static InputStream decode(InputStream body, String encoding) throws IOException {
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(body, 8192);
+            case "deflate":
+                return new InflaterInputStream(body);
+            case "":
+            case "identity":
+                return body;
+            default:
+                logger.warn("Unsupported Content-Encoding: " + encoding);
+                return body;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public record Response(int statusCode, URI uri, HttpHeaders headers, InputStream body) implements AutoCloseable {
+
+        public String header(String name) {
+            return headers.firstValue(name).orElse(null);
+        }
+
+        public String bodyAsString() throws IOException {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer meters for the media pipeline. Every stage is timed into {@code bot.stage.duration}
+ * tagged by stage, source and outcome, with p50 and p99 published so Prometheus shows where requests spend their time.
+ * Subprocesses (instaloader, spotdl, ffmpeg) also count towards the {@code bot.subprocess.active} gauge while running.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String SUCCESS = "success";
+    public static final String FAILURE = "failure";
+    public static final String CACHE_HIT = "cache_hit";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> activeSubprocesses = new ConcurrentHashMap<>();
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void stop(Timer.Sample sample, String stage, String source, String outcome) {
+        sample.stop(Timer.builder("bot.stage.duration")
+                .description("Time spent in one pipeline stage")
+                .tag("stage", stage)
+                .tag("source", source)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry));
+    }
+
+    public void stop(Timer.Sample sample, String stage, String source, boolean success) {
+        stop(sample, stage, source, success ? SUCCESS : FAILURE);
+    }
+
+    public void recordBytes(String stage, String source, long bytes) {
+        Counter.builder("bot.transfer.bytes")
+                .description("Bytes downloaded by the pipeline")
+                .baseUnit("bytes")
+                .tag("stage", stage)
+                .tag("source", source)
+                .register(registry)
+                .increment(bytes);
+    }
+
+    public Timer.Sample startSubprocess(String tool) {
+        subprocessGauge(tool).incrementAndGet();
+        return start();
+    }
+
+    public void stopSubprocess(Timer.Sample sample, String tool, String source, boolean success) {
+        subprocessGauge(tool).decrementAndGet();
+        stop(sample, tool, source, success);
+    }
+
+    private AtomicInteger subprocessGauge(String tool) {
+        return activeSubprocesses.computeIfAbsent(tool, name -> {
+            AtomicInteger running = new AtomicInteger();
+            Gauge.builder("bot.subprocess.active", running, AtomicInteger::get)
+                    .description("Subprocesses currently running")
+                    .tag("tool", name)
+                    .register(registry);
+            return running;
+        });
+    }
+}
@@ -0,0 +1,320 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a few long-lived Python processes with instaloader, spotdl and yt-dlp already imported,
+ * so a download does not pay for interpreter startup and module import.
+ * Jobs go to an idle worker as one line of JSON and the worker answers with one line carrying the exit code.
+ * A worker that times out, dies or grows past the memory limit is replaced. When no worker can take a job,
+ * including when the one taken turns out to be dead, {@link #run} returns an empty result and the caller
+ * starts the tool as a subprocess instead.
+ */
+@Component
+public class PythonWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(PythonWorkerPool.class);
+
+    private static final String WORKER_SCRIPT = "python/media_worker.py";
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+    private final boolean enabled;
+    private final int size;
+    private final String pythonCommand;
+    private final long maxRssKb;
+    private final int maxJobsPerWorker;
+    private final Duration acquireTimeout;
+
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+    private final Set<Worker> allWorkers = ConcurrentHashMap.newKeySet();
+    private final Set<String> availableTools = ConcurrentHashMap.newKeySet();
+    private final AtomicLong jobIds = new AtomicLong();
+    private final ExecutorService supervisor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "python-worker-supervisor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Path scriptPath;
+    private volatile boolean shuttingDown;
+
+    public PythonWorkerPool(@Value("${python.workers.enabled:true}") boolean enabled,
+                            @Value("${python.workers.size:2}") int size,
+                            @Value("${python.workers.command:python3}") String pythonCommand,
+                            @Value("${python.workers.max-rss-mb:512}") long maxRssMb,
+                            @Value("${python.workers.max-jobs:100}") int maxJobsPerWorker,
+                            @Value("${python.workers.acquire-timeout:5s}") Duration acquireTimeout) {
+        this.enabled = enabled;
+        this.size = size;
+        this.pythonCommand = pythonCommand;
+        this.maxRssKb = maxRssMb * 1024;
+        this.maxJobsPerWorker = maxJobsPerWorker;
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || size <= 0) {
+            logger.info("Python worker pool is disabled, tools will run as subprocesses");
+            return;
+        }
+        try {
+            scriptPath = extractScript();
+        } catch (IOException e) {
+            logger.error("Failed to extract " + WORKER_SCRIPT + ", tools will run as subprocesses: " + e.getMessage());
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            supervisor.execute(this::startWorker);
+        }
+    }
+
+    /**
+     * Runs {@code tool} with {@code args} in {@code workingDirectory} on an idle worker.
+     * Returns the tool's exit code, or an empty result if no worker could take the job.
+     * A job that times out or kills its worker counts as failed and is not retried.
+     */
+    public OptionalInt run(String tool, List<String> args, File workingDirectory, Duration timeout) {
+        if (!availableTools.contains(tool)) {
+            return OptionalInt.empty();
+        }
+
+        Worker worker;
+        try {
+            worker = acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return OptionalInt.empty();
+        }
+        if (worker == null) {
+            logger.warn("No idle Python worker for " + tool + " within " + acquireTimeout.toMillis() + " ms");
+            return OptionalInt.empty();
+        }
+
+        long jobId = jobIds.incrementAndGet();
+        JSONObject job = new JSONObject()
+                .put("id", jobId)
+                .put("tool", tool)
+                .put("args", new JSONArray(args))
+                .put("cwd", workingDirectory != null ? workingDirectory.getAbsolutePath() : JSONObject.NULL);
+
+        try {
+            worker.send(job);
+        } catch (IOException e) {
+            logger.warn("Python worker " + worker.name + " could not take " + tool + ", running it as a subprocess: " + e.getMessage());
+            replace(worker);
+            return OptionalInt.empty();
+        }
+
+        try {
+            logger.info("Python worker " + worker.name + " running " + tool + " " + String.join(" ", args));
+            JSONObject response = worker.await(jobId, timeout);
+            if (response == null) {
+                logger.error("Python worker " + worker.name + " did not finish " + tool + " within "
+                        + timeout.toSeconds() + " seconds");
+                replace(worker);
+                return OptionalInt.of(-1);
+            }
+
+            worker.jobs++;
+            long rssKb = response.optLong("rss_kb", 0);
+            if (rssKb > maxRssKb || worker.jobs >= maxJobsPerWorker || response.optBoolean("recycle")) {
+                logger.info("Recycling Python worker " + worker.name + " after " + worker.jobs + " jobs, rss " + rssKb + " kB"
+                        + (response.optBoolean("recycle") ? ", " + tool + " left state behind" : ""));
+                replace(worker);
+            } else {
+                idleWorkers.offer(worker);
+            }
+            return OptionalInt.of(response.optInt("exit_code", 1));
+        } catch (IOException | JSONException e) {
+            logger.error("Python worker " + worker.name + " failed while running " + tool + ": " + e.getMessage());
+            replace(worker);
+            return OptionalInt.of(-1);
+        }
+    }
+
+    /**
+     * Takes an idle worker, replacing any that died while waiting in the queue.
+     */
+    private Worker acquire() throws InterruptedException {
+        long deadline = System.nanoTime() + acquireTimeout.toNanos();
+        while (true) {
+            Worker worker = idleWorkers.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (worker == null || worker.process.isAlive()) {
+                return worker;
+            }
+            logger.warn("Python worker " + worker.name + " died while idle, replacing it");
+            replace(worker);
+        }
+    }
+
+    private void startWorker() {
+        if (shuttingDown) {
+            return;
+        }
+        try {
+            Worker worker = Worker.start(pythonCommand, scriptPath);
+            JSONObject ready = worker.readResponse(STARTUP_TIMEOUT);
+            if (ready == null || !ready.optBoolean("ready")) {
+                logger.error("Python worker " + worker.name + " did not become ready, tools will run as subprocesses");
+                worker.destroy();
+                return;
+            }
+            JSONArray tools = ready.optJSONArray("tools");
+            if (tools != null) {
+                for (int i = 0; i < tools.length(); i++) {
+                    availableTools.add(tools.getString(i));
+                }
+            }
+            allWorkers.add(worker);
+            idleWorkers.offer(worker);
+            logger.info("Python worker " + worker.name + " ready with " + availableTools);
+        } catch (IOException | JSONException e) {
+            logger.error("Failed to start Python worker, tools will run as subprocesses: " + e.getMessage());
+        }
+    }
+
+    private void replace(Worker worker) {
+        allWorkers.remove(worker);
+        worker.destroy();
+        supervisor.execute(this::startWorker);
+    }
+
+    private static Path extractScript() throws IOException {
+        Path script = Files.createTempFile("media_worker", ".py");
+        script.toFile().deleteOnExit();
+        try (InputStream resource = PythonWorkerPool.class.getClassLoader().getResourceAsStream(WORKER_SCRIPT)) {
+            if (resource == null) {
+                throw new IOException("Resource not found: " + WORKER_SCRIPT);
+            }
+            Files.copy(resource, script, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return script;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        supervisor.shutdownNow();
+        for (Worker worker : allWorkers) {
+            worker.destroy();
+        }
+        allWorkers.clear();
+        idleWorkers.clear();
+    }
+
+    private static final class Worker {
+
+        private static final AtomicLong counter = new AtomicLong();
+
+        private final String name;
+        private final Process process;
+        private final BufferedWriter stdin;
+        private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+        private int jobs;
+
+        private Worker(String name, Process process) {
+            this.name = name;
+            this.process = process;
+            this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        static Worker start(String pythonCommand, Path scriptPath) throws IOException {
+            Process process = new ProcessBuilder(pythonCommand, "-u", scriptPath.toString()).start();
+            Worker worker = new Worker("python-worker-" + counter.incrementAndGet(), process);
+            worker.pump(process.getInputStream(), true);
+            worker.pump(process.getErrorStream(), false);
+            return worker;
+        }
+
+        private void pump(InputStream stream, boolean protocol) {
+            Thread thread = new Thread(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (protocol) {
+                            responses.offer(line);
+                        } else {
+                            logger.debug(name + ": " + line);
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.debug("Stopped reading " + name + " output: " + e.getMessage());
+                }
+            }, name + (protocol ? "-protocol" : "-output"));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void send(JSONObject job) throws IOException {
+            stdin.write(job.toString());
+            stdin.newLine();
+            stdin.flush();
+        }
+
+        JSONObject await(long jobId, Duration timeout) throws IOException {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            while (true) {
+                JSONObject response = readResponse(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+                if (response == null || response.optLong("id", -1) == jobId) {
+                    return response;
+                }
+                logger.warn(name + " answered a stale job: " + response);
+            }
+        }
+
+        JSONObject readResponse(Duration timeout) throws IOException {
+            try {
+                long deadline = System.nanoTime() + timeout.toNanos();
+                while (System.nanoTime() < deadline) {
+                    String line = responses.poll(Math.min(500_000_000L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (line != null) {
+                        return new JSONObject(line);
+                    }
+                    if (!process.isAlive()) {
+                        throw new IOException(name + " exited with code " + process.exitValue());
+                    }
+                }
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for " + name, e);
+            }
+        }
+
+        void destroy() {
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+import com.exed1ons.bottiktokdownloader.dao.model.Role;
+import com.exed1ons.bottiktokdownloader.dao.repository.GroupMemberRepository;
+import com.exed1ons.bottiktokdownloader.dao.repository.RoleNameRepository;
+import com.exed1ons.bottiktokdownloader.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Read cache for mentions, kept per chat: the chat's role names and the member lists of the chat and of its roles.
+ * Members are kept as detached copies holding only chat, id, username and first name, which is all a mention needs.
+ * Writes in {@link GroupMemberService} and {@link RoleNameService} invalidate the affected entries once their
+ * transaction commits, and a load that raced with an invalidation is not stored.
+ */
+@Component
+public class RoleMembersCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoleMembersCache.class);
+
+    private final GroupMemberRepository groupMemberRepository;
+    private final RoleNameRepository roleNameRepository;
+    private final LruCache<Long, ChatEntry> chats;
+    private long generation;
+
+    public RoleMembersCache(GroupMemberRepository groupMemberRepository,
+                            RoleNameRepository roleNameRepository,
+                            @Value("${cache.role-members.chats:1000}") int maxChats) {
+        this.groupMemberRepository = groupMemberRepository;
+        this.roleNameRepository = roleNameRepository;
+        this.chats = new LruCache<>(maxChats);
+    }
+
+    public boolean isKnownRole(Long chatId, String roleName) {
+        return roleNames(chatId).contains(roleName);
+    }
+
+    /**
+     * One page of the chat's members, or of the members with {@code roleName} when it is not null, ordered by user id
+     * and starting after {@code afterId}. When the first page comes back short it holds every member, so it is cached
+     * and served from memory until the next write; larger lists are always paged from the database.
+     */
+    public List<GroupMember> getPage(Long chatId, String roleName, Long afterId, int limit) {
+        if (roleName != null && !isKnownRole(chatId, roleName)) {
+            return List.of();
+        }
+        ChatEntry entry = entry(chatId);
+        if (afterId == null) {
+            List<GroupMember> cached = entry.members(roleName);
+            if (cached != null && cached.size() < limit) {
+                return cached;
+            }
+        }
+
+        long loadedAt = currentGeneration();
+        Long after = afterId != null ? afterId : Long.MIN_VALUE;
+        List<GroupMember> page = snapshot(roleName != null
+                ? groupMemberRepository.findPageByChatIdAndRoleName(chatId, roleName, after, Limit.of(limit))
+                : groupMemberRepository.findByChatIdAndIdGreaterThanOrderByIdAsc(chatId, after, Limit.of(limit)));
+        if (afterId == null && page.size() < limit) {
+            synchronized (this) {
+                if (generation == loadedAt) {
+                    entry.storeMembers(roleName, page);
+                }
+            }
+        }
+        return page;
+    }
+
+    public void invalidateRole(Long chatId, String roleName) {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                ChatEntry entry = chats.get(chatId);
+                if (entry != null) {
+                    entry.membersByRole.remove(roleName);
+                }
+            }
+            logger.debug("Invalidated cached members of role " + roleName + " in chat " + chatId);
+        });
+    }
+
+    /**
+     * Drops the chat's cached member lists after a change to its members, keeping the role names.
+     */
+    public void invalidateMembers(Long chatId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                ChatEntry entry = chats.get(chatId);
+                if (entry != null) {
+                    entry.allMembers = null;
+                    entry.membersByRole.clear();
+                }
+            }
+            logger.debug("Invalidated cached members of chat " + chatId);
+        });
+    }
+
+    public void invalidateChat(Long chatId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                generation++;
+                chats.remove(chatId);
+            }
+            logger.debug("Invalidated cached roles and members of chat " + chatId);
+        });
+    }
+
+    private Set<String> roleNames(Long chatId) {
+        ChatEntry entry = entry(chatId);
+        Set<String> names = entry.roleNames;
+        if (names != null) {
+            return names;
+        }
+        long loadedAt = currentGeneration();
+        names = roleNameRepository.findByChatId(chatId).stream()
+                .map(Role::getName)
+                .collect(Collectors.toUnmodifiableSet());
+        synchronized (this) {
+            if (generation == loadedAt) {
+                entry.roleNames = names;
+            }
+        }
+        logger.info("Loaded " + names.size() + " role names for chat " + chatId);
+        return names;
+    }
+
+    private synchronized ChatEntry entry(Long chatId) {
+        ChatEntry entry = chats.get(chatId);
+        if (entry == null) {
+            entry = new ChatEntry();
+            chats.put(chatId, entry);
+        }
+        return entry;
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    private static List<GroupMember> snapshot(List<GroupMember> members) {
+        return members.stream()
+                .map(member -> GroupMember.builder()
+                        .chatId(member.getChatId())
+                        .id(member.getId())
+                        .userName(member.getUserName())
+                        .firstName(member.getFirstName())
+                        .build())
+                .toList();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static final class ChatEntry {
+        private final Map<String, List<GroupMember>> membersByRole = new ConcurrentHashMap<>();
+        private volatile Set<String> roleNames;
+        private volatile List<GroupMember> allMembers;
+
+        List<GroupMember> members(String roleName) {
+            return roleName != null ? membersByRole.get(roleName) : allMembers;
+        }
+
+        void storeMembers(String roleName, List<GroupMember> members) {
+            if (roleName != null) {
+                membersByRole.put(roleName, members);
+            } else {
+                allMembers = members;
+            }
+        }
+    }
+}
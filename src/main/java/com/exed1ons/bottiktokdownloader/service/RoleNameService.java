@@ -18,13 +18,21 @@ public class RoleNameService {
 
     private final RoleNameRepository roleNameRepository;
 
-    public void addRole(String name) {
+    private final RoleMembersCache roleMembersCache;
+
+    public void addRole(@Nonnull final Long chatId, String name) {
         roleNameRepository.save(Role.builder()
+                .chatId(chatId)
                 .name(name)
                 .build());
+        roleMembersCache.invalidateChat(chatId);
     }
 
-    public Optional<Role> removeRoleByName(@Nonnull final String name) {
-        return roleNameRepository.removeByName(name);
+    public Optional<Role> removeRoleByName(@Nonnull final Long chatId, @Nonnull final String name) {
+        Optional<Role> removed = roleNameRepository.removeByChatIdAndName(chatId, name);
+        if (removed.isPresent()) {
+            roleMembersCache.invalidateChat(chatId);
+        }
+        return removed;
     }
-}
\ No newline at end of file
+}
@@ -2,9 +2,7 @@ package com.exed1ons.bottiktokdownloader.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.telegram.telegrambots.meta.api.objects.InputFile;
 
 import java.io.File;
 
@@ -13,22 +11,33 @@ public class SendReelService {
     private static final Logger logger = LoggerFactory.getLogger(SendReelService.class);
 
     private final InstagramReelDownloadService instagramReelDownloadService;
+    private final MediaDownloadRegistry mediaDownloadRegistry;
+    private final MediaDiskCache mediaDiskCache;
 
-    @Value("${download.directory.video}")
-    private String downloadedVideoPath;
-
-    public SendReelService(InstagramReelDownloadService instagramReelDownloadService) {
+    public SendReelService(InstagramReelDownloadService instagramReelDownloadService,
+                           MediaDownloadRegistry mediaDownloadRegistry, MediaDiskCache mediaDiskCache) {
         this.instagramReelDownloadService = instagramReelDownloadService;
+        this.mediaDownloadRegistry = mediaDownloadRegistry;
+        this.mediaDiskCache = mediaDiskCache;
+    }
+
+    public MediaLease getVideo(String reelUrl) {
+        String shortcode = extractShortcode(reelUrl);
+        String key = shortcode != null ? FileIdCacheService.instagramReelKey(shortcode) : reelUrl;
+
+        return mediaDownloadRegistry.acquire(key,
+                () -> mediaDiskCache.getOrLoad(key, () -> downloadVideoFile(reelUrl)),
+                file -> mediaDiskCache.release(key, file));
     }
 
-    public InputFile getVideo(String reelUrl) {
+    private File downloadVideoFile(String reelUrl) {
         String videoFilePath = instagramReelDownloadService.downloadReel(reelUrl);
 
         if (videoFilePath != null) {
             File videoFile = new File(videoFilePath);
             if (videoFile.exists()) {
                 logger.info("Video successfully downloaded and found at: " + videoFilePath);
-                return new InputFile(videoFile);
+                return videoFile;
             } else {
                 logger.error("Downloaded file not found at: " + videoFilePath);
                 return null;
@@ -39,8 +48,7 @@ public class SendReelService {
         }
     }
 
-    public void deleteVideoFile(String fileName) {
-        String videoFilePath = downloadedVideoPath + File.separator + fileName;
-        instagramReelDownloadService.deleteFile(videoFilePath);
+    public String extractShortcode(String reelUrl) {
+        return instagramReelDownloadService.extractShortcode(reelUrl);
     }
 }
\ No newline at end of file
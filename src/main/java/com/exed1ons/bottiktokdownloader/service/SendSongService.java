@@ -4,47 +4,81 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.telegram.telegrambots.meta.api.objects.InputFile;
 
 import java.io.File;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Serves Spotify tracks from the media cache, running spotdl only for tracks that are not cached.
+ * Each spotdl run gets its own job directory, so concurrent downloads never see each other's files.
+ */
 @Service
 public class SendSongService {
     private static final Logger logger = LoggerFactory.getLogger(SendSongService.class);
 
+    private static final Pattern TRACK_ID_PATTERN = Pattern.compile("open\\.spotify\\.com/track/([A-Za-z0-9]+)");
+
     private final SpotifySongDownloadService spotifySongDownloadService;
+    private final MediaDownloadRegistry mediaDownloadRegistry;
+    private final MediaDiskCache mediaDiskCache;
 
     @Value("${download.directory.audio}")
     private String downloadedVideoPath;
 
-    public SendSongService(SpotifySongDownloadService spotifySongDownloadService) {
+    public SendSongService(SpotifySongDownloadService spotifySongDownloadService,
+                           MediaDownloadRegistry mediaDownloadRegistry, MediaDiskCache mediaDiskCache) {
         this.spotifySongDownloadService = spotifySongDownloadService;
+        this.mediaDownloadRegistry = mediaDownloadRegistry;
+        this.mediaDiskCache = mediaDiskCache;
     }
 
-    public InputFile getSong(String songUrl) {
+    public MediaLease getSong(String songUrl) {
+        String trackId = extractTrackId(songUrl);
+        String key = trackId != null ? FileIdCacheService.spotifyTrackKey(trackId) : songUrl;
 
-        boolean downloadSuccess = spotifySongDownloadService.downloadSong(songUrl);
+        return mediaDownloadRegistry.acquire(key,
+                () -> mediaDiskCache.getOrLoad(key, () -> downloadSongFile(songUrl)),
+                file -> mediaDiskCache.release(key, file));
+    }
 
-        if (downloadSuccess) {
-            File directory = new File(downloadedVideoPath);
-            File[] mp3Files = directory.listFiles((dir, name) -> name.toLowerCase().endsWith(".mp3"));
+    private File downloadSongFile(String songUrl) {
+        String jobName = "job_" + UUID.randomUUID();
+        File jobDirectory = new File(downloadedVideoPath, jobName);
+        File mp3File = spotifySongDownloadService.downloadSong(songUrl, jobDirectory);
 
-            if (mp3Files != null && mp3Files.length == 1) {
-                File mp3File = mp3Files[0];
-                logger.info("Audio successfully downloaded and found at: " + mp3File.getAbsolutePath());
-                return new InputFile(mp3File);
+        File songFile = null;
+        if (mp3File == null) {
+            logger.error("Download was not successful.");
+        } else {
+            File target = new File(downloadedVideoPath, jobName + ".mp3");
+            if (mp3File.renameTo(target)) {
+                logger.info("Audio successfully downloaded and found at: " + target.getAbsolutePath());
+                songFile = target;
             } else {
-                logger.error("Failed to find the audio file in the directory: " + downloadedVideoPath);
-                return null;
+                logger.error("Failed to move " + mp3File.getPath() + " out of its job directory");
             }
-        } else {
-            logger.error("Download was not successful.");
-            return null;
         }
+
+        deleteJobDirectory(jobDirectory);
+        return songFile;
+    }
+
+    public String extractTrackId(String songUrl) {
+        Matcher matcher = TRACK_ID_PATTERN.matcher(songUrl);
+        return matcher.find() ? matcher.group(1) : null;
     }
 
-    public void deleteFile(String fileName) {
-        String videoFilePath = downloadedVideoPath + File.separator + fileName;
-        spotifySongDownloadService.deleteFile(videoFilePath);
+    private void deleteJobDirectory(File jobDirectory) {
+        File[] leftovers = jobDirectory.listFiles();
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                spotifySongDownloadService.deleteFile(leftover.getPath());
+            }
+        }
+        if (jobDirectory.exists() && !jobDirectory.delete()) {
+            logger.warn("Unable to delete job directory: " + jobDirectory.getPath());
+        }
     }
 }
@@ -4,7 +4,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.telegram.telegrambots.meta.api.objects.InputFile;
 
 import java.io.File;
 import java.util.regex.Matcher;
@@ -15,32 +14,43 @@ public class SendTikTokService {
     private static final Logger logger = LoggerFactory.getLogger(SendTikTokService.class);
 
     private final TikTokDownloadService tikTokDownloadService;
+    private final MediaDownloadRegistry mediaDownloadRegistry;
+    private final MediaDiskCache mediaDiskCache;
 
     @Value("${download.directory.video}")
     private String downloadedVideoPath;
 
-    public SendTikTokService(TikTokDownloadService tikTokDownloadService) {
+    public SendTikTokService(TikTokDownloadService tikTokDownloadService, MediaDownloadRegistry mediaDownloadRegistry,
+                             MediaDiskCache mediaDiskCache) {
         this.tikTokDownloadService = tikTokDownloadService;
+        this.mediaDownloadRegistry = mediaDownloadRegistry;
+        this.mediaDiskCache = mediaDiskCache;
     }
 
-    public InputFile getVideo(String tikTokUrl) {
-
-
+    public MediaLease getVideo(String tikTokUrl) {
         String videoId = extractVideoId(tikTokUrl);
-        tikTokDownloadService.sendPreDownloadRequest(tikTokUrl);
-        tikTokDownloadService.downloadVideo(videoId);
 
         if (videoId == null) {
             logger.error("Failed to extract video ID from URL: " + tikTokUrl);
             return null;
         }
 
+        String key = FileIdCacheService.tikTokVideoKey(videoId);
+        return mediaDownloadRegistry.acquire(key,
+                () -> mediaDiskCache.getOrLoad(key, () -> downloadVideoFile(tikTokUrl, videoId)),
+                file -> mediaDiskCache.release(key, file));
+    }
+
+    private File downloadVideoFile(String tikTokUrl, String videoId) {
+        tikTokDownloadService.sendPreDownloadRequest(tikTokUrl);
+        tikTokDownloadService.downloadVideo(videoId);
+
         String videoFilePath = downloadedVideoPath + File.separator + videoId + ".mp4";
 
         File videoFile = new File(videoFilePath);
         if (videoFile.exists()) {
             logger.info("Video successfully downloaded and found at: " + videoFilePath);
-            return new InputFile(videoFile);
+            return videoFile;
         } else {
             logger.error("Failed to download video. File not found at: " + videoFilePath);
             return null;
@@ -61,9 +71,4 @@ public class SendTikTokService {
             return null;
         }
     }
-
-    public void deleteVideoFile(String fileName) {
-        String videoFilePath = downloadedVideoPath + File.separator + fileName;
-        tikTokDownloadService.deleteFile(videoFilePath);
-    }
 }
@@ -0,0 +1,10 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Downloads of one slideshow that are in progress. Images are listed in slide order.
+ */
+public record SlideshowDownload(List<CompletableFuture<String>> images, CompletableFuture<String> audio) {
+}
@@ -0,0 +1,9 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import java.util.List;
+
+/**
+ * Slide image links and the soundtrack link found on the tiktokio page of a TikTok slideshow.
+ */
+public record SlideshowPage(List<String> imageUrls, String audioUrl) {
+}
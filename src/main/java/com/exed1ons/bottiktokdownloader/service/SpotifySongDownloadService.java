@@ -1,5 +1,6 @@
 package com.exed1ons.bottiktokdownloader.service;
 
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,63 +10,113 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class SpotifySongDownloadService {
 
     private static final Logger logger = LoggerFactory.getLogger(SpotifySongDownloadService.class);
 
+    private final PythonWorkerPool pythonWorkerPool;
+    private final PipelineMetrics pipelineMetrics;
+    private final long timeoutSeconds;
 
-    @Value("${download.directory.audio}")
-    private String downloadDirectory;
+    public SpotifySongDownloadService(PythonWorkerPool pythonWorkerPool, PipelineMetrics pipelineMetrics,
+                                      @Value("${spotdl.timeout-seconds:300}") long timeoutSeconds) {
+        this.pythonWorkerPool = pythonWorkerPool;
+        this.pipelineMetrics = pipelineMetrics;
+        this.timeoutSeconds = timeoutSeconds;
+    }
 
-    public boolean downloadSong(String url) {
+    /**
+     * Runs spotdl inside {@code jobDirectory}, which must belong to this job alone,
+     * and returns the mp3 it produced there, or null if the download failed.
+     */
+    public File downloadSong(String url, File jobDirectory) {
+        try {
+            if (!jobDirectory.exists() && !jobDirectory.mkdirs()) {
+                logger.error("Failed to create download directory: " + jobDirectory.getPath());
+                throw new IOException("Unable to create download directory: " + jobDirectory.getPath());
+            }
 
-        String songTitle;
+            List<String> args = List.of(url, "--audio", "slider-kz", "soundcloud", "piped");
 
-        try {
-            File directory = new File(downloadDirectory);
-            if (!directory.exists()) {
-                if (directory.mkdirs()) {
-                    logger.info("Download directory created: " + downloadDirectory);
-                } else {
-                    logger.error("Failed to create download directory: " + downloadDirectory);
-                    throw new IOException("Unable to create download directory: " + downloadDirectory);
-                }
+            Timer.Sample sample = pipelineMetrics.startSubprocess("spotdl");
+            int exitCode = -1;
+            try {
+                OptionalInt workerExitCode = pythonWorkerPool.run("spotdl", args, jobDirectory, Duration.ofSeconds(timeoutSeconds));
+                exitCode = workerExitCode.isPresent() ? workerExitCode.getAsInt() : runSubprocess(args, jobDirectory);
+            } finally {
+                pipelineMetrics.stopSubprocess(sample, "spotdl", "spotify", exitCode == 0);
+            }
+            if (exitCode != 0) {
+                logger.info("Download failed. Exit code: " + exitCode);
+                return null;
             }
 
-            String[] command = {"spotdl", url, "--audio", "slider-kz", "soundcloud", "piped"};
+            File[] mp3Files = jobDirectory.listFiles((dir, name) -> name.toLowerCase().endsWith(".mp3"));
+            if (mp3Files == null || mp3Files.length != 1) {
+                logger.error("Expected one mp3 in " + jobDirectory.getPath() + ", found "
+                        + (mp3Files == null ? 0 : mp3Files.length));
+                return null;
+            }
+
+            logger.info("Download completed successfully: " + mp3Files[0].getPath());
+            return mp3Files[0];
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while running spotdl for " + url);
+            return null;
+        } catch (IOException e) {
+            logger.error("Error executing spotdl command: " + e.getMessage());
+            return null;
+        }
+    }
 
+    private int runSubprocess(List<String> args, File jobDirectory) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add("spotdl");
+        command.addAll(args);
 
-            logger.info("Executing spotdl command...");
-            ProcessBuilder processBuilder = new ProcessBuilder(command);
-            processBuilder.directory(new File(downloadDirectory));
-            Process process = processBuilder.start();
+        logger.info("Executing spotdl command in " + jobDirectory.getPath());
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(jobDirectory);
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
 
-            int exitCode = process.waitFor();
+        Thread outputDrainer = new Thread(() -> drainOutput(process), "spotdl-output");
+        outputDrainer.setDaemon(true);
+        outputDrainer.start();
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                logger.error("spotdl timed out after " + timeoutSeconds + " seconds");
+                return -1;
+            }
+            return process.exitValue();
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
 
+    private static void drainOutput(Process process) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
             String line;
-
             while ((line = reader.readLine()) != null) {
-                logger.warn(line);
                 if (line.contains("Downloaded")) {
-                    songTitle = line.substring(line.indexOf(" - ") + 3, line.lastIndexOf("\""));
-                    logger.warn("Song title: " + songTitle);
+                    logger.info("spotdl: " + line);
+                } else {
+                    logger.debug("spotdl: " + line);
                 }
             }
-
-            if (exitCode == 0) {
-                logger.info("Download completed successfully.");
-                return true;
-            } else {
-                logger.info("Download failed. Exit code: " + exitCode);
-                return false;
-            }
-        } catch (IOException | InterruptedException e) {
-            logger.info("Error executing spotdl command: " + e.getMessage());
-            return false;
+        } catch (IOException e) {
+            logger.debug("Stopped reading spotdl output: " + e.getMessage());
         }
     }
 
@@ -81,4 +132,4 @@ public class SpotifySongDownloadService {
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.exed1ons.bottiktokdownloader.service;
 
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -7,19 +8,64 @@ import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
 
 @Service
 public class TikTokDownloadService {
     private static final Logger logger = LoggerFactory.getLogger(TikTokDownloadService.class);
 
+    private static final Map<String, String> VIDEO_HEADERS = Map.ofEntries(
+            Map.entry("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"),
+            Map.entry("Accept-Language", "en-US,en;q=0.5"),
+            Map.entry("DNT", "1"),
+            Map.entry("Priority", "u=0, i"),
+            Map.entry("Sec-Fetch-Dest", "document"),
+            Map.entry("Sec-Fetch-Mode", "navigate"),
+            Map.entry("Sec-Fetch-Site", "none"),
+            Map.entry("Sec-Fetch-User", "?1"),
+            Map.entry("Sec-GPC", "1"),
+            Map.entry("Upgrade-Insecure-Requests", "1"),
+            Map.entry("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:143.0) Gecko/20100101 Firefox/143.0"));
+
+    private static final Map<String, String> PRE_DOWNLOAD_HEADERS = Map.ofEntries(
+            Map.entry("Accept", "*/*"),
+            Map.entry("Accept-Language", "en-US,en;q=0.5"),
+            Map.entry("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8"),
+            Map.entry("DNT", "1"),
+            Map.entry("HX-Current-URL", "https://ssstik.io/en-1"),
+            Map.entry("HX-Request", "true"),
+            Map.entry("HX-Target", "target"),
+            Map.entry("HX-Trigger", "_gcaptcha_pt"),
+            Map.entry("Origin", "https://ssstik.io"),
+            Map.entry("Priority", "u=0"),
+            Map.entry("Referer", "https://ssstik.io/en-1"),
+            Map.entry("Sec-Fetch-Dest", "empty"),
+            Map.entry("Sec-Fetch-Mode", "cors"),
+            Map.entry("Sec-Fetch-Site", "same-origin"),
+            Map.entry("Sec-GPC", "1"),
+            Map.entry("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:143.0) Gecko/20100101 Firefox/143.0"));
+
+    private final OutboundHttpClient outboundHttpClient;
+
     @Value("${download.directory.video}")
     private String downloadDirectory;
 
+    private final PipelineMetrics pipelineMetrics;
+
+    public TikTokDownloadService(OutboundHttpClient outboundHttpClient, PipelineMetrics pipelineMetrics) {
+        this.outboundHttpClient = outboundHttpClient;
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
     public void downloadVideo(String videoId) {
         String videoUrl = "https://tikcdn.io/ssstik/" + videoId;
         String outputFilePath = downloadDirectory + File.separator + videoId + ".mp4";
+        Timer.Sample sample = pipelineMetrics.start();
+        boolean downloaded = false;
 
         try {
             File directory = new File(downloadDirectory);
@@ -32,53 +78,44 @@ public class TikTokDownloadService {
                 }
             }
 
-            URL url = new URL(videoUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-
-            connection.setRequestProperty("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
-            connection.setRequestProperty("Accept-Encoding", "gzip, deflate, br, zstd");
-            connection.setRequestProperty("Accept-Language", "en-US,en;q=0.5");
-            connection.setRequestProperty("Connection", "keep-alive");
-            connection.setRequestProperty("DNT", "1");
-            connection.setRequestProperty("Host", "tikcdn.io");
-            connection.setRequestProperty("Priority", "u=0, i");
-            connection.setRequestProperty("Sec-Fetch-Dest", "document");
-            connection.setRequestProperty("Sec-Fetch-Mode", "navigate");
-            connection.setRequestProperty("Sec-Fetch-Site", "none");
-            connection.setRequestProperty("Sec-Fetch-User", "?1");
-            connection.setRequestProperty("Sec-GPC", "1");
-            connection.setRequestProperty("TE", "trailers");
-            connection.setRequestProperty("Upgrade-Insecure-Requests", "1");
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:143.0) Gecko/20100101 Firefox/143.0");
-
             logger.info("Sending request to: " + videoUrl);
-            int responseCode = connection.getResponseCode();
+            try (OutboundHttpClient.Response response = outboundHttpClient.get(videoUrl, VIDEO_HEADERS)) {
+                int responseCode = response.statusCode();
 
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                String contentType = connection.getContentType();
-                logger.info("Content-Type: " + contentType);
+                if (responseCode == HttpURLConnection.HTTP_OK) {
+                    String contentType = response.header("Content-Type");
+                    logger.info("Content-Type: " + contentType);
 
-                if (contentType != null && (contentType.contains("video") || contentType.equals("application/octet-stream"))) {
-                    try (InputStream inputStream = connection.getInputStream();
-                         FileOutputStream outputStream = new FileOutputStream(outputFilePath)) {
-                        byte[] buffer = new byte[8192];
-                        int bytesRead;
+                    if (contentType != null && (contentType.contains("video") || contentType.equals("application/octet-stream"))) {
+                        File partFile = new File(outputFilePath + ".part");
                         long totalBytes = 0;
-                        while ((bytesRead = inputStream.read(buffer)) != -1) {
-                            outputStream.write(buffer, 0, bytesRead);
-                            totalBytes += bytesRead;
+                        try (InputStream inputStream = response.body();
+                             FileOutputStream outputStream = new FileOutputStream(partFile)) {
+                            byte[] buffer = new byte[8192];
+                            int bytesRead;
+                            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                                outputStream.write(buffer, 0, bytesRead);
+                                totalBytes += bytesRead;
+                            }
+                        } catch (IOException e) {
+                            deleteFile(partFile.getPath());
+                            throw e;
                         }
+                        Files.move(partFile.toPath(), Path.of(outputFilePath), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
                         logger.info("Video downloaded successfully to: " + outputFilePath + " (Size: " + totalBytes + " bytes)");
+                        pipelineMetrics.recordBytes("tikcdn_download", "tiktok", totalBytes);
+                        downloaded = true;
+                    } else {
+                        logger.error("Response is not a video. Content-Type: " + contentType);
                     }
                 } else {
-                    logger.error("Response is not a video. Content-Type: " + contentType);
+                    logger.warn("Failed to download video. HTTP response code: " + responseCode);
                 }
-            } else {
-                logger.warn("Failed to download video. HTTP response code: " + responseCode);
             }
         } catch (IOException e) {
             logger.warn("Error during video download: " + e.getMessage());
+        } finally {
+            pipelineMetrics.stop(sample, "tikcdn_download", "tiktok", downloaded);
         }
     }
 
@@ -86,46 +123,19 @@ public class TikTokDownloadService {
         String postUrl = "https://ssstik.io/abc?url=dl";
         String formData = "id=" + encodeValue(tiktokUrl) + "&locale=en&tt=YXZLVm01";
 
-        try {
-            URL url = new URL(postUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-            connection.setRequestMethod("POST");
-            connection.setDoOutput(true);
-
-            connection.setRequestProperty("Accept", "*/*");
-            connection.setRequestProperty("Accept-Encoding", "gzip, deflate, br, zstd");
-            connection.setRequestProperty("Accept-Language", "en-US,en;q=0.5");
-            connection.setRequestProperty("Connection", "keep-alive");
-            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
-            connection.setRequestProperty("DNT", "1");
-            connection.setRequestProperty("Host", "ssstik.io");
-            connection.setRequestProperty("HX-Current-URL", "https://ssstik.io/en-1");
-            connection.setRequestProperty("HX-Request", "true");
-            connection.setRequestProperty("HX-Target", "target");
-            connection.setRequestProperty("HX-Trigger", "_gcaptcha_pt");
-            connection.setRequestProperty("Origin", "https://ssstik.io");
-            connection.setRequestProperty("Priority", "u=0");
-            connection.setRequestProperty("Referer", "https://ssstik.io/en-1");
-            connection.setRequestProperty("Sec-Fetch-Dest", "empty");
-            connection.setRequestProperty("Sec-Fetch-Mode", "cors");
-            connection.setRequestProperty("Sec-Fetch-Site", "same-origin");
-            connection.setRequestProperty("Sec-GPC", "1");
-            connection.setRequestProperty("TE", "trailers");
-            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:143.0) Gecko/20100101 Firefox/143.0");
-
-            try (OutputStream os = connection.getOutputStream()) {
-                os.write(formData.getBytes(StandardCharsets.UTF_8));
-                os.flush();
-            }
-
-            int responseCode = connection.getResponseCode();
+        Timer.Sample sample = pipelineMetrics.start();
+        try (OutboundHttpClient.Response response = outboundHttpClient.postForm(postUrl, formData, PRE_DOWNLOAD_HEADERS)) {
+            int responseCode = response.statusCode();
             logger.info("Pre-download request sent. Response code: " + responseCode);
+            pipelineMetrics.stop(sample, "ssstik_pre_download", "tiktok", responseCode / 100 == 2);
 
             Thread.sleep(500);
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             logger.error("Error during form submission: " + e.getMessage(), e);
+            pipelineMetrics.stop(sample, "ssstik_pre_download", "tiktok", false);
         }
     }
 
@@ -1,38 +1,102 @@
 package com.exed1ons.bottiktokdownloader.service;
 
+import com.exed1ons.bottiktokdownloader.util.LruCache;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 public class TikTokLinkConverter {
 
     private static final Logger logger = LoggerFactory.getLogger(TikTokLinkConverter.class);
 
+    private static final int MAX_REDIRECTS = 5;
+
+    private static final Map<String, String> HEADERS = Map.of(
+            "User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
+
+    private final OutboundHttpClient outboundHttpClient;
+    private final LinkClassifier linkClassifier;
+    private final LruCache<String, String> resolvedLinks;
+    private final PipelineMetrics pipelineMetrics;
+
+    public TikTokLinkConverter(OutboundHttpClient outboundHttpClient, LinkClassifier linkClassifier,
+                               @Value("${cache.short-link.size:10000}") int cacheSize,
+                               @Value("${cache.short-link.ttl:24h}") Duration cacheTtl,
+                               PipelineMetrics pipelineMetrics) {
+        this.outboundHttpClient = outboundHttpClient;
+        this.linkClassifier = linkClassifier;
+        this.resolvedLinks = new LruCache<>(cacheSize, cacheTtl);
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /**
+     * Resolves a vm./vt.tiktok.com short link by following redirects one hop at a time.
+     * It stops at the first Location that is a canonical /video/ or /photo/ URL, so the TikTok page itself is never fetched.
+     */
     public String expandUrlUsingApi(String shortenedUrl) throws IOException {
+        Timer.Sample sample = pipelineMetrics.start();
+        String cached = resolvedLinks.get(shortenedUrl);
+        if (cached != null) {
+            logger.info("Resolved shortened URL from cache: {} -> {}", shortenedUrl, cached);
+            pipelineMetrics.stop(sample, "short_link_expansion", "tiktok", PipelineMetrics.CACHE_HIT);
+            return cached;
+        }
+
+        try {
+            String expandedUrl = followRedirects(shortenedUrl);
+            pipelineMetrics.stop(sample, "short_link_expansion", "tiktok", canonicalUrl(expandedUrl).isPresent());
+            return expandedUrl;
+        } catch (IOException e) {
+            pipelineMetrics.stop(sample, "short_link_expansion", "tiktok", false);
+            throw e;
+        }
+    }
+
+    private String followRedirects(String shortenedUrl) throws IOException {
         logger.info("Attempting to expand shortened URL: {}", shortenedUrl);
+        String currentUrl = shortenedUrl;
 
-        URL url = new URL(shortenedUrl);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-        connection.setConnectTimeout(5000);
-        connection.setReadTimeout(5000);
-        connection.setInstanceFollowRedirects(true);
+        for (int hop = 0; hop < MAX_REDIRECTS; hop++) {
+            String location;
+            try (OutboundHttpClient.Response response = outboundHttpClient.getWithoutRedirects(currentUrl, HEADERS)) {
+                logger.info("Received response code: {}", response.statusCode());
+                location = response.statusCode() / 100 == 3 ? response.header("Location") : null;
+            }
 
-        try {
-            int responseCode = connection.getResponseCode();
-            logger.info("Received response code: {}", responseCode);
+            if (location == null) {
+                break;
+            }
+            try {
+                currentUrl = URI.create(currentUrl).resolve(location).toString();
+            } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring malformed redirect Location from {}: {}", currentUrl, location);
+                break;
+            }
 
-            String expandedUrl = connection.getURL().toString();
-            logger.info("Expanded URL: {}", expandedUrl);
-            return expandedUrl;
-        } finally {
-            connection.disconnect();
+            Optional<String> expandedUrl = canonicalUrl(currentUrl);
+            if (expandedUrl.isPresent()) {
+                resolvedLinks.put(shortenedUrl, expandedUrl.get());
+                logger.info("Expanded URL: {}", expandedUrl.get());
+                return expandedUrl.get();
+            }
         }
+
+        logger.warn("Shortened URL did not redirect to a TikTok video or photo: {} -> {}", shortenedUrl, currentUrl);
+        return currentUrl;
+    }
+
+    private Optional<String> canonicalUrl(String url) {
+        return linkClassifier.classifyUrl(url)
+                .filter(link -> link.type() == MediaLink.Type.TIKTOK_VIDEO || link.type() == MediaLink.Type.TIKTOK_PHOTO)
+                .map(MediaLink::url);
     }
 }
@@ -1,9 +1,10 @@
 package com.exed1ons.bottiktokdownloader.service;
 
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,95 +14,106 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 public class TikTokSlideDownloadService {
 
     private static final Logger logger = LoggerFactory.getLogger(TikTokSlideDownloadService.class);
 
+    private static final Pattern POST_ID_PATTERN = Pattern.compile("/photo/([0-9]+)");
+
+    private static final int MAGIC_BYTES_LENGTH = 12;
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+    private static final String PART_SUFFIX = ".part";
+
+    private static final Map<String, String> API_HEADERS = Map.of("Accept", "*/*");
+    private static final Map<String, String> DOWNLOAD_HEADERS = Map.of("User-Agent", "Mozilla/5.0");
+
+    private final OutboundHttpClient outboundHttpClient;
+    private final PipelineMetrics pipelineMetrics;
+
     @Value("${download.directory.downloads}")
     private String downloadDirectory;
 
-    public List<String> downloadSlides(String tiktokUrl) {
-        logger.info("Starting downloadSlides with URL: " + tiktokUrl);
-        List<String> downloadedPhotos = new ArrayList<>();
-        try {
-            String jsonResponse = sendPostRequest(tiktokUrl);
-            if (jsonResponse != null) {
-                logger.debug("Received JSON response: " + jsonResponse);
-
-                Document doc = Jsoup.parse(jsonResponse);
-                Elements downloadLinks = doc.select("img[src]");
-
-                logger.info("Found " + downloadLinks.size() + " image links in the response");
-
-                for (Element link : downloadLinks) {
-                    String imageUrl = link.attr("src");
-                    logger.debug("Processing link: " + imageUrl);
-
-                    if (imageUrl.contains("tiktokcdn")) {
-                        String downloadedPath = downloadImage(imageUrl);
-                        if (downloadedPath != null) {
-                            logger.info("Downloaded photo to: " + downloadedPath);
-                            downloadedPhotos.add(downloadedPath);
-                        } else {
-                            logger.warn("Failed to download image: " + imageUrl);
-                        }
-                    }
-                }
-            } else {
-                logger.warn("Received null response for URL: " + tiktokUrl);
-            }
-        } catch (Exception e) {
-            logger.error("Error downloading slides: " + e.getMessage(), e);
-        }
-        logger.info("Finished downloadSlides with " + downloadedPhotos.size() + " photos downloaded.");
-        return downloadedPhotos;
+    private final ExecutorService downloadExecutor;
+
+    public TikTokSlideDownloadService(OutboundHttpClient outboundHttpClient, PipelineMetrics pipelineMetrics,
+                                      @Value("${slides.download.concurrency:4}") int downloadConcurrency) {
+        this.outboundHttpClient = outboundHttpClient;
+        this.pipelineMetrics = pipelineMetrics;
+        this.downloadExecutor = Executors.newFixedThreadPool(downloadConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "slide-download");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    public String downloadAudio(String tiktokUrl) {
-        logger.info("Starting downloadAudio with URL: " + tiktokUrl);
-        try {
-            String jsonResponse = sendPostRequest(tiktokUrl);
-            if (jsonResponse != null) {
-                logger.debug("Received JSON response for audio: " + jsonResponse);
+    /**
+     * Fetches the provider page once and starts downloading the slides after the first {@code skipImages}
+     * and the soundtrack in parallel. The returned futures complete with the local file path, or with
+     * {@code null} when a download failed.
+     */
+    public SlideshowDownload startSlideshowDownload(String tiktokUrl, int skipImages) {
+        logger.info("Starting slideshow download with URL: " + tiktokUrl);
+        String htmlResponse = sendPostRequest(tiktokUrl);
+        if (htmlResponse == null) {
+            logger.warn("Received null response for URL: " + tiktokUrl);
+            return null;
+        }
 
-                Document doc = Jsoup.parse(jsonResponse);
-                Elements audioLinks = doc.select("a[href*='download?token=']");
+        SlideshowPage page = parseSlideshowPage(htmlResponse);
+        logger.info("Found " + page.imageUrls().size() + " image links and "
+                + (page.audioUrl() != null ? "an" : "no") + " audio link in the response");
 
-                logger.info("Found " + audioLinks.size() + " audio links in the response");
+        List<CompletableFuture<String>> images = new ArrayList<>();
+        for (String imageUrl : page.imageUrls().subList(Math.min(skipImages, page.imageUrls().size()), page.imageUrls().size())) {
+            images.add(CompletableFuture.supplyAsync(() -> downloadImage(imageUrl), downloadExecutor));
+        }
 
-                Element link = audioLinks.last();
+        CompletableFuture<String> audio = page.audioUrl() != null
+                ? CompletableFuture.supplyAsync(() -> downloadAudio(page.audioUrl(), "mp3"), downloadExecutor)
+                : CompletableFuture.completedFuture(null);
 
-                if(link == null) {
-                    logger.warn("No audio links found in the response");
-                    return null;
-                }
+        return new SlideshowDownload(images, audio);
+    }
 
-                String audioUrl = link.attr("href");
-                logger.debug("Processing audio link: " + audioUrl);
+    public static SlideshowPage parseSlideshowPage(String html) {
+        Document doc = Jsoup.parse(html);
 
-                if (audioUrl.contains("tiktokio")) {
-                    String downloadedPath = downloadAudio(audioUrl, "mp3");
-                    if (downloadedPath != null) {
-                        logger.info("Downloaded audio to: " + downloadedPath);
-                        return downloadedPath;
-                    } else {
-                        logger.warn("Failed to download audio: " + audioUrl);
-                    }
-                }
-            } else {
-                logger.warn("Received null response for URL: " + tiktokUrl);
+        List<String> imageUrls = new ArrayList<>();
+        for (Element image : doc.select("img[src]")) {
+            String imageUrl = image.attr("src");
+            if (imageUrl.contains("tiktokcdn")) {
+                imageUrls.add(imageUrl);
             }
-        } catch (Exception e) {
-            logger.error("Error downloading audio: " + e.getMessage(), e);
         }
-        return null;
+
+        Element audioLink = doc.select("a[href*='download?token=']").last();
+        String audioUrl = audioLink != null ? audioLink.attr("href") : null;
+        if (audioUrl != null && !audioUrl.contains("tiktokio")) {
+            audioUrl = null;
+        }
+
+        return new SlideshowPage(imageUrls, audioUrl);
     }
 
     private String sendPostRequest(String tiktokUrl) {
@@ -113,75 +125,64 @@ public class TikTokSlideDownloadService {
                 URLEncoder.encode(prefix, StandardCharsets.UTF_8),
                 URLEncoder.encode(tiktokUrl, StandardCharsets.UTF_8));
 
-        try {
-            HttpURLConnection conn = getHttpURLConnection(apiUrl, formData);
-
-            int responseCode = conn.getResponseCode();
+        Timer.Sample sample = pipelineMetrics.start();
+        try (OutboundHttpClient.Response response = outboundHttpClient.postForm(apiUrl, formData, API_HEADERS)) {
+            int responseCode = response.statusCode();
             logger.info("POST request response code: " + responseCode);
 
             if (responseCode == HttpURLConnection.HTTP_OK) {
-                InputStream inputStream = conn.getInputStream();
-                String response = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-                logger.debug("Received response from TikTok API: " + response);
+                String body = response.bodyAsString();
+                logger.debug("Received response from TikTok API: " + body);
 
-                logger.info("Response: " + response);
-                return response;
+                logger.info("Response: " + body);
+                pipelineMetrics.stop(sample, "tiktokio_post", "tiktok", true);
+                pipelineMetrics.recordBytes("tiktokio_post", "tiktok", body.length());
+                return body;
             } else {
                 logger.error("Failed to get a valid response. HTTP Code: " + responseCode);
+                pipelineMetrics.stop(sample, "tiktokio_post", "tiktok", false);
                 return null;
             }
 
         } catch (Exception e) {
             logger.error("Error sending POST request: " + e.getMessage(), e);
+            pipelineMetrics.stop(sample, "tiktokio_post", "tiktok", false);
             return null;
         }
     }
 
-    private static HttpURLConnection getHttpURLConnection(String apiUrl, String formData) throws IOException {
-        URL url = new URL(apiUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        conn.setRequestProperty("Accept", "*/*");
-        conn.setDoOutput(true);
-
-        try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = formData.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
-        }
-        return conn;
-    }
-
     private String downloadImage(String imageUrl) {
         logger.info("Starting download for image: " + imageUrl);
-        try {
-            URL url = new URL(imageUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-
-            int responseCode = conn.getResponseCode();
+        try (OutboundHttpClient.Response response = outboundHttpClient.get(imageUrl, DOWNLOAD_HEADERS)) {
+            int responseCode = response.statusCode();
             logger.info("GET request response code: " + responseCode);
-            logger.info(conn.getResponseMessage());
 
             if (responseCode == HttpURLConnection.HTTP_OK) {
-                try (InputStream inputStream = conn.getInputStream()) {
-                    BufferedImage image = ImageIO.read(inputStream);
+                try (PushbackInputStream inputStream = new PushbackInputStream(response.body(), MAGIC_BYTES_LENGTH)) {
+                    byte[] head = inputStream.readNBytes(MAGIC_BYTES_LENGTH);
+                    inputStream.unread(head);
 
-                    if (image != null) {
-                        String fileName = imageUrl.substring(imageUrl.lastIndexOf("/") + 1, imageUrl.indexOf("~"));
-                        String fileExtension = "jpg";
-                        File downloadDir = new File(downloadDirectory);
-
-                        if (!downloadDir.exists()) {
-                            downloadDir.mkdirs();
-                            logger.info("Created download directory: " + downloadDir.getAbsolutePath());
-                        }
+                    String fileName = uniqueFileName(imageUrl, "slide");
+                    File downloadDir = createDownloadDirectory();
+                    String fileExtension = detectImageExtension(response.header("Content-Type"), head);
 
+                    if (fileExtension != null) {
                         File outputFile = new File(downloadDir, fileName + "." + fileExtension);
                         logger.info("Saving image to file: " + outputFile.getAbsolutePath());
 
-                        ImageIO.write(image, fileExtension, outputFile);
+                        long size = copyToFile(inputStream, outputFile.toPath());
+                        logger.info("Image downloaded successfully: " + outputFile.getName() + " (Size: " + size + " bytes)");
+                        pipelineMetrics.recordBytes("slide_download", "tiktok", size);
+                        return outputFile.getAbsolutePath();
+                    }
+
+                    logger.info("Image type is not supported by Telegram as is, converting to JPEG: " + imageUrl);
+                    BufferedImage image = ImageIO.read(inputStream);
+                    if (image != null) {
+                        File outputFile = new File(downloadDir, fileName + ".jpg");
+                        logger.info("Saving image to file: " + outputFile.getAbsolutePath());
+
+                        writeJpeg(image, outputFile.toPath());
                         logger.info("Image downloaded successfully: " + outputFile.getName());
                         return outputFile.getAbsolutePath();
                     } else {
@@ -200,35 +201,18 @@ public class TikTokSlideDownloadService {
 
     private String downloadAudio(String fileUrl, String fileExtension) {
         logger.info("Starting download for file: " + fileUrl);
-        try {
-            URL url = new URL(fileUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-
-            int responseCode = conn.getResponseCode();
+        try (OutboundHttpClient.Response response = outboundHttpClient.get(fileUrl, DOWNLOAD_HEADERS)) {
+            int responseCode = response.statusCode();
             logger.info("GET request response code: " + responseCode);
 
             if (responseCode == HttpURLConnection.HTTP_OK) {
-                try (InputStream inputStream = conn.getInputStream()) {
-                    byte[] fileData = inputStream.readAllBytes();
-
-                    String fileName = fileUrl.substring(fileUrl.lastIndexOf("/") + 1, fileUrl.indexOf("?"));
-                    File downloadDir = new File(downloadDirectory);
-
-                    if (!downloadDir.exists()) {
-                        downloadDir.mkdirs();
-                        logger.info("Created download directory: " + downloadDir.getAbsolutePath());
-                    }
-
-                    File outputFile = new File(downloadDir, fileName + "." + fileExtension);
+                try (InputStream inputStream = response.body()) {
+                    File outputFile = new File(createDownloadDirectory(), uniqueFileName(fileUrl, "audio") + "." + fileExtension);
                     logger.info("Saving file to: " + outputFile.getAbsolutePath());
 
-                    try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                        fos.write(fileData);
-                    }
-
-                    logger.info("File downloaded successfully: " + outputFile.getName());
+                    long size = copyToFile(inputStream, outputFile.toPath());
+                    logger.info("File downloaded successfully: " + outputFile.getName() + " (Size: " + size + " bytes)");
+                    pipelineMetrics.recordBytes("slide_audio_download", "tiktok", size);
                     return outputFile.getAbsolutePath();
                 }
             } else {
@@ -241,6 +225,110 @@ public class TikTokSlideDownloadService {
         return null;
     }
 
+    private File createDownloadDirectory() {
+        File downloadDir = new File(downloadDirectory);
+        if (!downloadDir.exists()) {
+            downloadDir.mkdirs();
+            logger.info("Created download directory: " + downloadDir.getAbsolutePath());
+        }
+        return downloadDir;
+    }
+
+    /**
+     * Names a download after the last path segment of {@code url}, cut at the first {@code ~} or {@code ?},
+     * and makes it unique so concurrent downloads of the same media never share a file.
+     */
+    static String uniqueFileName(String url, String fallback) {
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        for (char end : new char[]{'~', '?', '#'}) {
+            int index = name.indexOf(end);
+            if (index >= 0) {
+                name = name.substring(0, index);
+            }
+        }
+        name = name.replaceAll("[^A-Za-z0-9_-]", "");
+        return (name.isEmpty() ? fallback : name) + "_" + UUID.randomUUID();
+    }
+
+    private static long copyToFile(InputStream inputStream, Path target) throws IOException {
+        Path part = partFileFor(target);
+        try {
+            long position = 0;
+            try (ReadableByteChannel source = Channels.newChannel(inputStream);
+                 FileChannel destination = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                long transferred;
+                while ((transferred = destination.transferFrom(source, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                    position += transferred;
+                }
+            }
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            return position;
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    private static void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Path part = partFileFor(target);
+        try {
+            if (!ImageIO.write(image, "jpg", part.toFile())) {
+                throw new IOException("No JPEG writer available");
+            }
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    /**
+     * Files are written under a {@code .part} name and renamed when complete, so a reader never sees a partial download.
+     */
+    private static Path partFileFor(Path target) {
+        return target.resolveSibling(target.getFileName() + PART_SUFFIX);
+    }
+
+    /**
+     * Returns the file extension for images Telegram accepts as they are, or {@code null} if the image has to be converted.
+     */
+    static String detectImageExtension(String contentType, byte[] head) {
+        if (contentType != null) {
+            String mimeType = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+            switch (mimeType) {
+                case "image/jpeg":
+                case "image/jpg":
+                    return "jpg";
+                case "image/png":
+                    return "png";
+                case "image/webp":
+                    return "webp";
+                default:
+                    break;
+            }
+        }
+
+        if (head.length >= 3 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xD8 && (head[2] & 0xFF) == 0xFF) {
+            return "jpg";
+        }
+        if (head.length >= 4 && (head[0] & 0xFF) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G') {
+            return "png";
+        }
+        if (head.length >= 12 && head[0] == 'R' && head[1] == 'I' && head[2] == 'F' && head[3] == 'F'
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "webp";
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        downloadExecutor.shutdown();
+    }
+
+    public String extractPostId(String tiktokUrl) {
+        Matcher matcher = POST_ID_PATTERN.matcher(tiktokUrl);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
     public void deleteFile(String fileName) {
         String filePath = downloadDirectory + File.separator + fileName;
         File fileToDelete = new File(filePath);
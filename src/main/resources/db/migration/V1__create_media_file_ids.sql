@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS media_file_ids
+(
+    cache_key  VARCHAR(255) PRIMARY KEY,
+    file_ids   TEXT                     NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
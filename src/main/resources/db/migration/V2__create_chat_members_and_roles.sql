@@ -0,0 +1,29 @@
+CREATE TABLE IF NOT EXISTS chat_members
+(
+    chat_id    BIGINT       NOT NULL,
+    user_id    BIGINT       NOT NULL,
+    user_name  VARCHAR(255),
+    first_name VARCHAR(255),
+    PRIMARY KEY (chat_id, user_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_chat_members_user_name ON chat_members (chat_id, user_name);
+
+CREATE TABLE IF NOT EXISTS chat_roles
+(
+    chat_id   BIGINT       NOT NULL,
+    role_name VARCHAR(255) NOT NULL,
+    PRIMARY KEY (chat_id, role_name)
+);
+
+CREATE TABLE IF NOT EXISTS chat_member_roles
+(
+    chat_id   BIGINT       NOT NULL,
+    role_name VARCHAR(255) NOT NULL,
+    user_id   BIGINT       NOT NULL,
+    PRIMARY KEY (chat_id, role_name, user_id),
+    FOREIGN KEY (chat_id, role_name) REFERENCES chat_roles (chat_id, role_name) ON DELETE CASCADE,
+    FOREIGN KEY (chat_id, user_id) REFERENCES chat_members (chat_id, user_id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_chat_member_roles_member ON chat_member_roles (chat_id, user_id);
@@ -0,0 +1,8 @@
+-- Telegram usernames are case-insensitive: lookups go through a lower-cased copy kept by the application.
+ALTER TABLE chat_members ADD COLUMN IF NOT EXISTS user_name_normalized VARCHAR(255);
+
+UPDATE chat_members SET user_name_normalized = LOWER(user_name) WHERE user_name IS NOT NULL;
+
+DROP INDEX IF EXISTS idx_chat_members_user_name;
+
+CREATE INDEX IF NOT EXISTS idx_chat_members_user_name_normalized ON chat_members (chat_id, user_name_normalized);
@@ -0,0 +1,131 @@
+"""Long-lived worker that runs instaloader, spotdl and yt-dlp in-process.
+
+Protocol: one JSON object per line.
+  stdin  <- {"id": 1, "tool": "spotdl", "args": ["..."], "cwd": "/path"}
+  stdout -> {"ready": true, "tools": ["instaloader", ...]}        (once, after imports)
+  stdout -> {"id": 1, "exit_code": 0, "rss_kb": 123456}          (one per job)
+  stdout -> {"id": 2, "exit_code": 0, "rss_kb": 123456, "recycle": true}
+            when the tool left state behind that the next job cannot run with
+
+The tools print freely, so the protocol stream is a duplicate of the original stdout
+and file descriptor 1 is pointed at stderr, which the Java side only logs.
+"""
+import json
+import os
+import sys
+
+protocol = os.fdopen(os.dup(1), "w", buffering=1)
+os.dup2(2, 1)
+sys.stdout = sys.stderr
+
+RUNNERS = {}
+recycle_after_job = False
+
+try:
+    from instaloader.__main__ import main as instaloader_main
+
+    def run_instaloader(args):
+        sys.argv = ["instaloader"] + args
+        return instaloader_main()
+
+    RUNNERS["instaloader"] = run_instaloader
+except ImportError as e:
+    print("instaloader unavailable: %s" % e, file=sys.stderr)
+
+try:
+    from spotdl.console.entry_point import console_entry_point as spotdl_main
+
+    try:
+        from spotdl.utils.spotify import SpotifyClient
+    except ImportError:
+        SpotifyClient = None
+
+    def reset_spotdl():
+        # console_entry_point calls SpotifyClient.init, a process-wide singleton that
+        # refuses a second init, so every job starts from an uninitialised client.
+        if SpotifyClient is not None and hasattr(SpotifyClient, "_instance"):
+            SpotifyClient._instance = None
+            return True
+        return False
+
+    def run_spotdl(args):
+        global recycle_after_job
+        if not reset_spotdl():
+            recycle_after_job = True
+        sys.argv = ["spotdl"] + args
+        return spotdl_main()
+
+    RUNNERS["spotdl"] = run_spotdl
+except ImportError as e:
+    print("spotdl unavailable: %s" % e, file=sys.stderr)
+
+try:
+    import yt_dlp
+
+    def run_yt_dlp(args):
+        return yt_dlp.main(args)
+
+    RUNNERS["yt-dlp"] = run_yt_dlp
+except ImportError as e:
+    print("yt-dlp unavailable: %s" % e, file=sys.stderr)
+
+
+def current_rss_kb():
+    try:
+        with open("/proc/self/status") as status:
+            for line in status:
+                if line.startswith("VmRSS:"):
+                    return int(line.split()[1])
+    except OSError:
+        pass
+    import resource
+    return resource.getrusage(resource.RUSAGE_SELF).ru_maxrss
+
+
+def exit_code_of(result):
+    if result is None:
+        return 0
+    if isinstance(result, int):
+        return result
+    return 1
+
+
+def run_job(job):
+    runner = RUNNERS.get(job.get("tool"))
+    if runner is None:
+        print("Unknown or unavailable tool: %s" % job.get("tool"), file=sys.stderr)
+        return 127
+
+    home = os.getcwd()
+    try:
+        if job.get("cwd"):
+            os.chdir(job["cwd"])
+        return exit_code_of(runner(list(job.get("args", []))))
+    except SystemExit as e:
+        return exit_code_of(e.code)
+    except BaseException as e:
+        print("%s failed: %r" % (job.get("tool"), e), file=sys.stderr)
+        return 1
+    finally:
+        os.chdir(home)
+        sys.stderr.flush()
+
+
+def main():
+    global recycle_after_job
+    protocol.write(json.dumps({"ready": True, "tools": sorted(RUNNERS)}) + "\n")
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        job = json.loads(line)
+        recycle_after_job = False
+        exit_code = run_job(job)
+        response = {"id": job.get("id"), "exit_code": exit_code, "rss_kb": current_rss_kb()}
+        if recycle_after_job:
+            response["recycle"] = True
+        protocol.write(json.dumps(response) + "\n")
+
+
+if __name__ == "__main__":
+    main()
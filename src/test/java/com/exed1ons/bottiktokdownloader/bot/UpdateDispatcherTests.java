@@ -0,0 +1,93 @@
+package com.exed1ons.bottiktokdownloader.bot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpdateDispatcherTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UpdateDispatcher dispatcher;
+
+    @AfterEach
+    void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void queueGaugeCountsUpdatesChainedBehindTheSameChat() throws Exception {
+        dispatcher = new UpdateDispatcher(4, 1, false, 10, meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 1; i <= 3; i++) {
+            dispatcher.dispatch(update(i, 42L), update -> {
+                started.countDown();
+                await(release);
+            });
+        }
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queueGauge("media")).isEqualTo(2);
+        assertThat(dispatcher.getQueuedTasks()).isEqualTo(2);
+        release.countDown();
+    }
+
+    @Test
+    void fullLaneMakesThePollingThreadWait() throws Exception {
+        dispatcher = new UpdateDispatcher(1, 1, false, 2, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger handled = new AtomicInteger();
+
+        dispatcher.dispatch(update(1, 1L), update -> {
+            await(release);
+            handled.incrementAndGet();
+        });
+        dispatcher.dispatch(update(2, 2L), update -> handled.incrementAndGet());
+
+        Thread poller = new Thread(() -> dispatcher.dispatch(update(3, 3L), update -> handled.incrementAndGet()));
+        poller.start();
+        poller.join(300);
+        assertThat(poller.isAlive()).isTrue();
+
+        release.countDown();
+        poller.join(5000);
+        assertThat(poller.isAlive()).isFalse();
+    }
+
+    private double queueGauge(String lane) {
+        return meterRegistry.get("bot.dispatcher.queue").tag("lane", lane).gauge().value();
+    }
+
+    private static Update update(int updateId, long chatId) {
+        Chat chat = new Chat();
+        chat.setId(chatId);
+        chat.setType("group");
+        Message message = new Message();
+        message.setChat(chat);
+        message.setText("https://www.tiktok.com/@user/video/" + updateId);
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
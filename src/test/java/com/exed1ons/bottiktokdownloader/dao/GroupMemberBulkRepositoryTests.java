@@ -0,0 +1,96 @@
+package com.exed1ons.bottiktokdownloader.dao;
+
+import com.exed1ons.bottiktokdownloader.dao.model.GroupMember;
+import com.exed1ons.bottiktokdownloader.dao.repository.GroupMemberBulkRepository;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the member upsert against PostgreSQL, since H2 does not accept {@code INSERT ... ON CONFLICT DO UPDATE}.
+ * Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class GroupMemberBulkRepositoryTests {
+
+    private static final long CHAT_ID = -1001L;
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private JdbcTemplate jdbcTemplate;
+    private GroupMemberBulkRepository repository;
+
+    @BeforeEach
+    void migrate() {
+        Flyway flyway = Flyway.configure()
+                .dataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword())
+                .locations("classpath:db/migration", "classpath:com/exed1ons/bottiktokdownloader/dao/migration")
+                .placeholders(Map.of("legacy_chat_id", "0"))
+                .cleanDisabled(false)
+                .load();
+        flyway.clean();
+        flyway.migrate();
+
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword()));
+        repository = new GroupMemberBulkRepository(jdbcTemplate);
+    }
+
+    @Test
+    void insertsNewMembers() {
+        assertThat(repository.upsertAll(List.of(member(1, "Alice", "Alice"), member(2, null, "Bob")))).isEqualTo(2);
+
+        assertThat(jdbcTemplate.queryForList("SELECT user_name_normalized FROM chat_members WHERE chat_id = ? ORDER BY user_id",
+                String.class, CHAT_ID)).containsExactly("alice", null);
+    }
+
+    @Test
+    void updatesRenamedMembersOnly() {
+        repository.upsertAll(List.of(member(1, "Alice", "Alice"), member(2, null, "Bob")));
+
+        assertThat(repository.upsertAll(List.of(member(1, "Alice_New", "Alice"), member(2, null, "Bob")))).isEqualTo(1);
+
+        assertThat(jdbcTemplate.queryForMap("SELECT user_name, user_name_normalized FROM chat_members WHERE chat_id = ? AND user_id = 1",
+                CHAT_ID)).containsEntry("user_name", "Alice_New").containsEntry("user_name_normalized", "alice_new");
+    }
+
+    @Test
+    void unchangedMembersAreNotCounted() {
+        List<GroupMember> members = List.of(member(1, "Alice", "Alice"), member(2, null, "Bob"));
+        repository.upsertAll(members);
+
+        assertThat(repository.upsertAll(members)).isZero();
+    }
+
+    @Test
+    void writesMoreMembersThanOneStatementHolds() {
+        List<GroupMember> members = new ArrayList<>();
+        for (long userId = 1; userId <= 1201; userId++) {
+            members.add(member(userId, "user" + userId, "User " + userId));
+        }
+
+        assertThat(repository.upsertAll(members)).isEqualTo(1201);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_members WHERE chat_id = ?", Integer.class, CHAT_ID))
+                .isEqualTo(1201);
+    }
+
+    private static GroupMember member(long userId, String userName, String firstName) {
+        return GroupMember.builder()
+                .chatId(CHAT_ID)
+                .id(userId)
+                .userName(userName)
+                .firstName(firstName)
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package com.exed1ons.bottiktokdownloader.dao;
+
+import com.exed1ons.bottiktokdownloader.dao.repository.GroupMemberBulkRepository;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the migrations over a database that still has the global members, roles and member_roles tables
+ * and checks that their rows end up in the chat-scoped tables.
+ */
+class LegacyMemberMigrationTests {
+
+    private static final long CHAT_ID = -1001L;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createLegacyTables() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID()
+                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE members (id BIGINT PRIMARY KEY, user_name VARCHAR(255), first_name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE roles (id BIGINT PRIMARY KEY, name VARCHAR(255) UNIQUE)");
+        jdbcTemplate.execute("CREATE TABLE member_roles (member_id BIGINT REFERENCES members (id), role_id BIGINT REFERENCES roles (id))");
+        jdbcTemplate.update("INSERT INTO members VALUES (1, 'Alice', 'Alice'), (2, NULL, 'Bob'), (3, 'carol', 'Carol')");
+        jdbcTemplate.update("INSERT INTO roles VALUES (10, 'devs'), (11, 'ops')");
+        jdbcTemplate.update("INSERT INTO member_roles VALUES (1, 10), (2, 10), (3, 11)");
+    }
+
+    @Test
+    void importsLegacyRowsIntoConfiguredChat() {
+        migrate(String.valueOf(CHAT_ID));
+
+        assertThat(jdbcTemplate.queryForList("SELECT user_name_normalized FROM chat_members WHERE chat_id = ? ORDER BY user_id",
+                String.class, CHAT_ID)).containsExactly("alice", null, "carol");
+        assertThat(jdbcTemplate.queryForList("SELECT role_name FROM chat_roles WHERE chat_id = ? ORDER BY role_name",
+                String.class, CHAT_ID)).containsExactly("devs", "ops");
+        assertThat(jdbcTemplate.queryForList("SELECT user_id FROM chat_member_roles WHERE chat_id = ? AND role_name = 'devs' "
+                + "ORDER BY user_id", Long.class, CHAT_ID)).containsExactly(1L, 2L);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM legacy_member_roles", Integer.class)).isEqualTo(3);
+    }
+
+    @Test
+    void chatsClaimOnlyTheLegacyMembersTheyConfirm() {
+        migrate("0");
+        GroupMemberBulkRepository repository = new GroupMemberBulkRepository(jdbcTemplate);
+
+        assertThat(repository.claimLegacyRows(CHAT_ID, List.of(1L, 42L))).isEqualTo(1);
+        assertThat(repository.claimLegacyRows(-1002L, List.of(1L, 3L))).isEqualTo(2);
+        assertThat(repository.claimLegacyRows(CHAT_ID, List.of(1L))).isZero();
+        assertThat(repository.claimLegacyRows(-1003L, List.of())).isZero();
+
+        assertThat(jdbcTemplate.queryForList("SELECT user_id FROM chat_members WHERE chat_id = ? ORDER BY user_id",
+                Long.class, CHAT_ID)).containsExactly(1L);
+        assertThat(jdbcTemplate.queryForList("SELECT role_name FROM chat_roles WHERE chat_id = ? ORDER BY role_name",
+                String.class, CHAT_ID)).containsExactly("devs");
+        List<Map<String, Object>> assignments = jdbcTemplate.queryForList(
+                "SELECT role_name, user_id FROM chat_member_roles WHERE chat_id = ? ORDER BY role_name, user_id", -1002L);
+        assertThat(assignments).extracting(row -> row.get("role_name") + ":" + row.get("user_id"))
+                .containsExactly("devs:1", "ops:3");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_members WHERE chat_id = 0", Integer.class)).isEqualTo(3);
+    }
+
+    private void migrate(String legacyChatId) {
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration", "classpath:com/exed1ons/bottiktokdownloader/dao/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .placeholders(Map.of("legacy_chat_id", legacyChatId))
+                .load()
+                .migrate();
+    }
+}
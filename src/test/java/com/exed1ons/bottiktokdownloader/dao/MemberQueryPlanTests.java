@@ -0,0 +1,113 @@
+package com.exed1ons.bottiktokdownloader.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the Flyway migrations on H2 in PostgreSQL mode and checks that each member and role lookup
+ * is answered from the index it was designed for.
+ */
+@JdbcTest(properties = {
+        "spring.profiles.active=test",
+        "spring.datasource.url=jdbc:h2:mem:plans;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password="
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class MemberQueryPlanTests {
+
+    private static final long CHAT_ID = -1001L;
+    private static final long OTHER_CHAT_ID = -1002L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void insertMembers() {
+        List<Object[]> members = new ArrayList<>();
+        List<Object[]> roles = new ArrayList<>();
+        for (long userId = 1; userId <= 500; userId++) {
+            for (long chatId : new long[]{CHAT_ID, OTHER_CHAT_ID}) {
+                String userName = "User" + userId;
+                members.add(new Object[]{chatId, userId, userName, "First" + userId, userName.toLowerCase(Locale.ROOT)});
+                if (userId % 5 == 0) {
+                    roles.add(new Object[]{chatId, "role" + (userId % 3), userId});
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO chat_members (chat_id, user_id, user_name, first_name, user_name_normalized) "
+                + "VALUES (?, ?, ?, ?, ?)", members);
+        for (long chatId : new long[]{CHAT_ID, OTHER_CHAT_ID}) {
+            for (int role = 0; role < 3; role++) {
+                jdbcTemplate.update("INSERT INTO chat_roles (chat_id, role_name) VALUES (?, ?)", chatId, "role" + role);
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO chat_member_roles (chat_id, role_name, user_id) VALUES (?, ?, ?)", roles);
+    }
+
+    @Test
+    void userNameLookupUsesNormalizedIndex() {
+        String plan = explain("SELECT * FROM chat_members WHERE chat_id = " + CHAT_ID
+                + " AND user_name_normalized = 'user42'");
+
+        assertThat(plan).contains(scanOf("idx_chat_members_user_name_normalized")).doesNotContain("tableScan");
+    }
+
+    @Test
+    void memberPageUsesPrimaryKeyRange() {
+        String plan = explain("SELECT * FROM chat_members WHERE chat_id = " + CHAT_ID
+                + " AND user_id > 100 ORDER BY user_id LIMIT 50");
+
+        assertThat(plan).contains(scanOf(primaryKeyIndex("chat_members"))).doesNotContain("tableScan");
+    }
+
+    @Test
+    void rolePageUsesIndexesOnBothTables() {
+        String plan = explain("SELECT m.* FROM chat_members m JOIN chat_member_roles r "
+                + "ON r.chat_id = m.chat_id AND r.user_id = m.user_id "
+                + "WHERE r.chat_id = " + CHAT_ID + " AND r.role_name = 'role1' AND r.user_id > 0 "
+                + "ORDER BY r.user_id LIMIT 50");
+
+        assertThat(plan)
+                .contains(scanOf(primaryKeyIndex("chat_member_roles")))
+                .contains(scanOf(primaryKeyIndex("chat_members")))
+                .doesNotContain("tableScan");
+    }
+
+    @Test
+    void roleNamesLookupUsesPrimaryKey() {
+        String plan = explain("SELECT role_name FROM chat_roles WHERE chat_id = " + CHAT_ID);
+
+        assertThat(plan).contains(scanOf(primaryKeyIndex("chat_roles"))).doesNotContain("tableScan");
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+    }
+
+    /**
+     * H2 generates the names of primary key indexes, so they are looked up rather than hard-coded.
+     */
+    private String primaryKeyIndex(String table) {
+        return jdbcTemplate.queryForObject("SELECT index_name FROM information_schema.indexes "
+                + "WHERE table_schema = CURRENT_SCHEMA AND table_name = ? AND index_type_name = 'PRIMARY KEY'", String.class, table);
+    }
+
+    /**
+     * How H2 names the index a table is read through, e.g. {@code public.idx_name: chat_id = ...}.
+     */
+    private static String scanOf(String index) {
+        return "public." + index + ":";
+    }
+}
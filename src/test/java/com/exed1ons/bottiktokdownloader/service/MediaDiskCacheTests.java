@@ -0,0 +1,61 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MediaDiskCacheTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void evictingEveryKeyOfASharedObjectFreesItOnce() throws Exception {
+        Path cacheDirectory = tempDir.resolve("cache");
+        MediaDiskCache cache = new MediaDiskCache(cacheDirectory.toString(), 1000, Duration.ZERO);
+        cache.loadIndex();
+        storeAndRelease(cache, "tiktok:video:1", "a".repeat(100));
+        storeAndRelease(cache, "instagram:reel:1", "a".repeat(100));
+        storeAndRelease(cache, "tiktok:video:2", "b".repeat(100));
+        assertThat(cache.getTotalBytes()).isEqualTo(200);
+
+        MediaDiskCache reloaded = new MediaDiskCache(cacheDirectory.toString(), 150, Duration.ZERO);
+        reloaded.loadIndex();
+
+        assertThat(reloaded.getTotalBytes()).isEqualTo(100);
+        assertThat(reloaded.get("tiktok:video:1")).isNull();
+        assertThat(reloaded.get("instagram:reel:1")).isNull();
+        assertThat(reloaded.get("tiktok:video:2")).isNotNull();
+    }
+
+    @Test
+    void identicalContentAdoptsTheStoredObject() throws Exception {
+        MediaDiskCache cache = new MediaDiskCache(tempDir.resolve("cache").toString(), 1000, Duration.ZERO);
+        cache.loadIndex();
+        Path first = Files.writeString(tempDir.resolve("first.mp4"), "a".repeat(100));
+        Path second = Files.writeString(tempDir.resolve("second.mp4"), "a".repeat(100));
+
+        File stored = cache.store("tiktok:video:1", first.toFile());
+        File adopted = cache.store("instagram:reel:1", second.toFile());
+
+        assertThat(adopted).isEqualTo(stored).hasSize(100);
+        assertThat(second).doesNotExist();
+        assertThat(stored.getParentFile().list()).containsExactly(stored.getName());
+        assertThat(cache.getTotalBytes()).isEqualTo(100);
+    }
+
+    private void storeAndRelease(MediaDiskCache cache, String key, String content) throws IOException, InterruptedException {
+        Path source = tempDir.resolve("download.mp4");
+        Files.writeString(source, content);
+        File stored = cache.store(key, source.toFile());
+        cache.release(key, stored);
+        Thread.sleep(5);
+    }
+}
@@ -0,0 +1,79 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OutboundHttpClientTests {
+
+    private HttpServer server;
+    private OutboundHttpClient client;
+
+    @AfterEach
+    void stop() {
+        if (client != null) {
+            client.shutdown();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void readsBodyThatArrivesInTime() throws Exception {
+        start(body -> body.write("hello".getBytes(StandardCharsets.UTF_8)), 5);
+
+        try (OutboundHttpClient.Response response = client.get(url(), Map.of())) {
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.bodyAsString()).isEqualTo("hello");
+        }
+    }
+
+    @Test
+    void failsWhenBodyStallsPastDeadline() throws Exception {
+        start(body -> {
+            body.write("he".getBytes(StandardCharsets.UTF_8));
+            body.flush();
+            Thread.sleep(5000);
+        }, 5);
+
+        long started = System.nanoTime();
+        try (OutboundHttpClient.Response response = client.get(url(), Map.of())) {
+            assertThatThrownBy(response::bodyAsString).isInstanceOf(HttpTimeoutException.class);
+        }
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(3));
+    }
+
+    private void start(BodyWriter writer, long contentLength) throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, contentLength);
+            try (OutputStream body = exchange.getResponseBody()) {
+                writer.write(body);
+            } catch (Exception e) {
+                exchange.close();
+            }
+        });
+        server.setExecutor(null);
+        server.start();
+        client = new OutboundHttpClient(Duration.ofSeconds(1), Duration.ofSeconds(1), "", Duration.ofMillis(500));
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    private interface BodyWriter {
+        void write(OutputStream body) throws Exception;
+    }
+}
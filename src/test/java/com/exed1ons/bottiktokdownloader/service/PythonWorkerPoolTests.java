@@ -0,0 +1,144 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalInt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs media_worker.py against a stand-in spotdl package whose entry point initialises a process-wide
+ * Spotify client singleton the same way the real one does.
+ */
+class PythonWorkerPoolTests {
+
+    private static final String SPOTIFY_CLIENT = """
+            class SpotifyError(Exception):
+                pass
+
+
+            class Singleton(type):
+                _instance = None
+
+                def init(self, client_id, client_secret):
+                    if isinstance(self._instance, self):
+                        raise SpotifyError("A spotify client has already been initialized")
+                    self._instance = super().__call__()
+                    return self._instance
+
+
+            class SpotifyClient(metaclass=Singleton):
+                pass
+            """;
+
+    private static final String ENTRY_POINT = """
+            from spotdl.utils.spotify import SpotifyClient
+
+
+            def console_entry_point():
+                SpotifyClient.init(client_id="id", client_secret="secret")
+                open("song.mp3", "w").close()
+            """;
+
+    private static final String DYING_ENTRY_POINT = """
+            import os
+            import threading
+
+
+            def console_entry_point():
+                open("song.mp3", "w").close()
+                threading.Timer(0.2, os._exit, [1]).start()
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    private PythonWorkerPool pool;
+
+    @AfterEach
+    void stopPool() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void runsConsecutiveSpotdlJobsOnOneWorker() throws Exception {
+        assumeTrue(pythonAvailable(), "python3 is not installed");
+        pool = new PythonWorkerPool(true, 1, fakeSpotdlPython(ENTRY_POINT).toString(), 512, 100, Duration.ofSeconds(30));
+        pool.start();
+
+        File firstJob = Files.createDirectory(tempDir.resolve("job1")).toFile();
+        File secondJob = Files.createDirectory(tempDir.resolve("job2")).toFile();
+
+        assertThat(runWhenReady(firstJob)).hasValue(0);
+        assertThat(runWhenReady(secondJob)).hasValue(0);
+        assertThat(new File(firstJob, "song.mp3")).exists();
+        assertThat(new File(secondJob, "song.mp3")).exists();
+    }
+
+    @Test
+    void replacesWorkerThatDiedWhileIdle() throws Exception {
+        assumeTrue(pythonAvailable(), "python3 is not installed");
+        pool = new PythonWorkerPool(true, 1, fakeSpotdlPython(DYING_ENTRY_POINT).toString(), 512, 100, Duration.ofSeconds(30));
+        pool.start();
+
+        File firstJob = Files.createDirectory(tempDir.resolve("job1")).toFile();
+        File secondJob = Files.createDirectory(tempDir.resolve("job2")).toFile();
+
+        assertThat(runWhenReady(firstJob)).hasValue(0);
+        Thread.sleep(1000);
+
+        OptionalInt second = pool.run("spotdl", List.of("https://open.spotify.com/track/test"), secondJob, Duration.ofSeconds(30));
+        assertThat(second).hasValue(0);
+        assertThat(new File(secondJob, "song.mp3")).exists();
+    }
+
+    private OptionalInt runWhenReady(File jobDirectory) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        OptionalInt result = OptionalInt.empty();
+        while (result.isEmpty() && System.nanoTime() < deadline) {
+            result = pool.run("spotdl", List.of("https://open.spotify.com/track/test"), jobDirectory, Duration.ofSeconds(30));
+            if (result.isEmpty()) {
+                Thread.sleep(100);
+            }
+        }
+        return result;
+    }
+
+    private Path fakeSpotdlPython(String entryPoint) throws IOException {
+        Path packages = tempDir.resolve("site");
+        Files.createDirectories(packages.resolve("spotdl/console"));
+        Files.createDirectories(packages.resolve("spotdl/utils"));
+        Files.writeString(packages.resolve("spotdl/__init__.py"), "");
+        Files.writeString(packages.resolve("spotdl/console/__init__.py"), "");
+        Files.writeString(packages.resolve("spotdl/utils/__init__.py"), "");
+        Files.writeString(packages.resolve("spotdl/utils/spotify.py"), SPOTIFY_CLIENT);
+        Files.writeString(packages.resolve("spotdl/console/entry_point.py"), entryPoint);
+
+        Path launcher = tempDir.resolve("python-with-fake-spotdl");
+        Files.writeString(launcher, "#!/bin/sh\nPYTHONPATH='" + packages + "' exec python3 \"$@\"\n");
+        assertThat(launcher.toFile().setExecutable(true)).isTrue();
+        return launcher;
+    }
+
+    private static boolean pythonAvailable() {
+        try {
+            return new ProcessBuilder("python3", "--version").start().waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.exed1ons.bottiktokdownloader.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TikTokSlideDownloadServiceTests {
+
+    @Test
+    void fileNameIsCutAtTheFirstSeparator() {
+        String name = TikTokSlideDownloadService.uniqueFileName(
+                "https://p16-sign.tiktokcdn.com/obj/tos-alisg/abc123~tplv-photomode.jpeg?x=1", "slide");
+
+        assertThat(name).matches("abc123_[0-9a-f-]{36}");
+    }
+
+    @Test
+    void fileNameWithoutSeparatorKeepsTheWholeSegment() {
+        String name = TikTokSlideDownloadService.uniqueFileName("https://tiktokcdn.com/image/abc123", "slide");
+
+        assertThat(name).startsWith("abc123_");
+    }
+
+    @Test
+    void concurrentDownloadsOfTheSameUrlGetDifferentNames() {
+        String url = "https://tiktokio.cc/download?token=xyz";
+
+        assertThat(TikTokSlideDownloadService.uniqueFileName(url, "audio"))
+                .startsWith("download_")
+                .isNotEqualTo(TikTokSlideDownloadService.uniqueFileName(url, "audio"));
+    }
+}